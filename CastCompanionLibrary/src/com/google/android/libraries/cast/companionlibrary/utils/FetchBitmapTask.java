@@ -123,14 +123,15 @@ public abstract class FetchBitmapTask extends AsyncTask<Uri, Void, Bitmap> {
             }
         } catch (IOException e) { /* ignore */
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
+            // closing the stream without disconnecting leaves the connection in the keep-alive
+            // pool, so the next image from the same host doesn't pay for a new TLS handshake
             if (stream != null) {
                 try {
                     stream.close();
                 } catch (IOException e) { /* ignore */
                 }
+            } else if (urlConnection != null) {
+                urlConnection.disconnect();
             }
         }
 
@@ -0,0 +1,185 @@
+package com.tragicfruit.twitcast.database;
+
+import android.test.AndroidTestCase;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.show.Show;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs two refreshes of the same show at once, as the latest episodes and the show grid can, and
+ * checks they share each feed download but not the episodes read from it.
+ */
+public class ConcurrentRefreshTest extends AndroidTestCase {
+    private static final String[] FEEDS = {
+            "http://test.invalid/show.xml",
+            "http://test.invalid/show_video_small.xml",
+            "http://test.invalid/show_video_large.xml",
+            "http://test.invalid/show_video_hd.xml"
+    };
+    private static final int EPISODE_COUNT = 3;
+
+    /**
+     * Serves the same episodes in every feed, holding each response until released.
+     */
+    private static class FeedTransport implements HttpTransport {
+        private final Map<String, AtomicInteger> mRequests = new ConcurrentHashMap<>();
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+        private final TransportStats mStats = new TransportStats();
+
+        @Override
+        public HttpResponse get(final String urlSpec, Map<String, String> headers) throws IOException {
+            mRequests.putIfAbsent(urlSpec, new AtomicInteger());
+            mRequests.get(urlSpec).incrementAndGet();
+
+            try {
+                mRelease.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            final byte[] body = createFeed(urlSpec).getBytes();
+            return new HttpResponse() {
+                @Override
+                public int getCode() {
+                    return 200;
+                }
+
+                @Override
+                public String getMessage() {
+                    return "OK";
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    return null;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public long getContentLength() {
+                    return body.length;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public TransportStats getStats() {
+            return mStats;
+        }
+
+        int getRequestCount(String urlSpec) {
+            AtomicInteger count = mRequests.get(urlSpec);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    private static String createFeed(String feedUrl) {
+        StringBuilder feed = new StringBuilder("<?xml version=\"1.0\"?><rss><channel>");
+        for (int i = EPISODE_COUNT; i > 0; i--) {
+            feed.append("<item><title>Test Show ").append(i).append("</title>")
+                    .append("<guid>").append(feedUrl).append('#').append(i).append("</guid>")
+                    .append("<pubDate>Wed, ").append(i).append(" Jun 2017 22:00:00 GMT</pubDate>")
+                    .append("<itunes:subtitle>Subtitle ").append(i).append("</itunes:subtitle>")
+                    .append("<itunes:summary>Show notes ").append(i).append("</itunes:summary>")
+                    .append("</item>");
+        }
+        return feed.append("</channel></rss>").toString();
+    }
+
+    private FeedTransport mTransport;
+    private ExecutorService mExecutor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTransport = new FeedTransport();
+        TWiTFetcher.setTransport(mTransport);
+        mExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mTransport.mRelease.countDown();
+        mExecutor.shutdownNow();
+        TWiTFetcher.setTransport(null);
+        super.tearDown();
+    }
+
+    public void testRefreshesDontShareEpisodes() throws Exception {
+        final Show show = new Show();
+        show.setAudioFeed(FEEDS[0]);
+        show.setVideoSmallFeed(FEEDS[1]);
+        show.setVideoLargeFeed(FEEDS[2]);
+        show.setVideoHdFeed(FEEDS[3]);
+
+        Callable<List<Episode>> refresh = new Callable<List<Episode>>() {
+            @Override
+            public List<Episode> call() throws Exception {
+                return new TWiTFetcher(getContext()).fetchEpisodes(show);
+            }
+        };
+        Future<List<Episode>> first = mExecutor.submit(refresh);
+        Future<List<Episode>> second = mExecutor.submit(refresh);
+
+        // both refreshes are waiting on every feed before any of them is answered
+        long deadline = System.currentTimeMillis() + 10000;
+        while (TWiTFetcher.getFeedCallerCount() < 2 * FEEDS.length) {
+            assertTrue("Refreshes didn't overlap", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        mTransport.mRelease.countDown();
+
+        List<Episode> firstEpisodes = first.get(10, TimeUnit.SECONDS);
+        List<Episode> secondEpisodes = second.get(10, TimeUnit.SECONDS);
+        for (String feed : FEEDS) {
+            assertEquals(1, mTransport.getRequestCount(feed));
+        }
+        assertEquals(EPISODE_COUNT, firstEpisodes.size());
+        assertEquals(EPISODE_COUNT, secondEpisodes.size());
+
+        Set<Episode> firstSet = Collections.newSetFromMap(new IdentityHashMap<Episode, Boolean>());
+        firstSet.addAll(firstEpisodes);
+        for (Episode episode : secondEpisodes) {
+            assertFalse(episode.getTitle() + " is shared", firstSet.contains(episode));
+        }
+
+        // as TWiTLab does to the episodes it adds
+        for (Episode episode : firstEpisodes) {
+            episode.setShow(show);
+            episode.setSubtitle(null);
+            episode.setShowNotes(null);
+            episode.setVideoHdUrl(null);
+        }
+        for (Episode episode : secondEpisodes) {
+            assertNull(episode.getShow());
+            assertNotNull(episode.getSubtitle());
+            assertNotNull(episode.getShowNotes());
+            assertNotNull(episode.getVideoHdUrl());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.tragicfruit.twitcast.database;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.show.Show;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compares the heap held by episodes that keep their subtitle and show notes, as loaded before,
+ * with light episodes whose details are read on demand. Sizes are logged.
+ */
+public class EpisodeHeapBenchmark extends AndroidTestCase {
+    private static final String TAG = "EpisodeHeapBenchmark";
+
+    // about the length of a TWiT feed's itunes:subtitle and itunes:summary
+    private static final int SUBTITLE_LENGTH = 200;
+    private static final int SHOW_NOTES_LENGTH = 2000;
+
+    private final Show mShow = new Show();
+    private List<Episode> mEpisodes; // kept reachable while measured
+
+    public void test250() {
+        benchmark(250);
+    }
+
+    public void test2500() {
+        benchmark(2500);
+    }
+
+    private void benchmark(int episodeCount) {
+        long fullBytes = measure(episodeCount, true);
+        long lightBytes = measure(episodeCount, false);
+
+        assertTrue(lightBytes < fullBytes);
+        Log.i(TAG, episodeCount + " episodes: with details " + fullBytes / 1024 + "KB, light "
+                + lightBytes / 1024 + "KB");
+    }
+
+    private long measure(int episodeCount, boolean withDetails) {
+        long before = getUsedMemory();
+        mEpisodes = createEpisodes(episodeCount, withDetails);
+        long after = getUsedMemory();
+
+        assertEquals(episodeCount, mEpisodes.size());
+        mEpisodes = null;
+        return after - before;
+    }
+
+    private List<Episode> createEpisodes(int episodeCount, boolean withDetails) {
+        List<Episode> episodes = new ArrayList<>(episodeCount);
+        for (int i = 0; i < episodeCount; i++) {
+            Episode episode = new Episode();
+            episode.setTitle("Episode " + i);
+            episode.setPublicationDate(new Date(1457136000000L + i * 3600000L));
+            episode.setVideoHdUrl("http://example.com/" + i + "_hd.mp4");
+            episode.setVideoLargeUrl("http://example.com/" + i + "_large.mp4");
+            episode.setVideoSmallUrl("http://example.com/" + i + "_small.mp4");
+            episode.setAudioUrl("http://example.com/" + i + ".mp3");
+            episode.setRunningTime("1:23:45");
+            episode.setShow(mShow);
+            if (withDetails) {
+                episode.setSubtitle(createText(i, SUBTITLE_LENGTH));
+                episode.setShowNotes(createText(i, SHOW_NOTES_LENGTH));
+            }
+            episodes.add(episode);
+        }
+        return episodes;
+    }
+
+    // distinct strings, as read from the feeds or the database
+    private static String createText(int i, int length) {
+        StringBuilder text = new StringBuilder(length).append(i).append(' ');
+        while (text.length() < length) {
+            text.append("lorem ipsum ");
+        }
+        return text.substring(0, length);
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,112 @@
+package com.tragicfruit.twitcast.database;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.show.Show;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Times loading episodes into an EpisodeIndex and adding a refresh to it, per episode, at
+ * growing sizes. Loading and adding should cost about the same per episode at any size. Timings
+ * are logged.
+ */
+public class EpisodeIndexBenchmark extends AndroidTestCase {
+    private static final String TAG = "EpisodeIndexBenchmark";
+    private static final int SHOW_COUNT = 40;
+    private static final int[] EPISODE_COUNTS = { 250, 2500, 25000 };
+    private static final int RUNS = 5;
+
+    public void testLoadAndAdd() {
+        // warm up
+        for (int count : EPISODE_COUNTS) {
+            timeLoad(count);
+            timeAdd(count);
+        }
+
+        for (int count : EPISODE_COUNTS) {
+            double loadNanos = Double.MAX_VALUE;
+            double addNanos = Double.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                loadNanos = Math.min(loadNanos, (double) timeLoad(count) / count);
+                addNanos = Math.min(addNanos, (double) timeAdd(count) / count);
+            }
+
+            Log.i(TAG, String.format("%6d episodes: load %5.0f ns/episode, add %5.0f ns/episode",
+                    count, loadNanos, addNanos));
+        }
+    }
+
+    // as TWiTLab loads episodes: a show lookup per row, then one build
+    private static long timeLoad(int count) {
+        List<Show> shows = createShows();
+        List<Episode> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(createEpisode(shows.get(i % SHOW_COUNT), i));
+        }
+
+        long startTime = System.nanoTime();
+        EpisodeIndex index = EpisodeIndex.EMPTY.withShows(shows);
+        EpisodeIndex.Builder builder = index.edit();
+        for (Episode row : rows) {
+            row.setShow(index.getShow(row.getShow().getId()));
+            builder.put(row);
+        }
+        index = builder.build(count);
+        long nanos = System.nanoTime() - startTime;
+
+        assertEquals(count, index.getEpisodes().size());
+        return nanos;
+    }
+
+    // as TWiTLab adds a refresh: half the episodes are new and the oldest are evicted
+    private static long timeAdd(int count) {
+        List<Show> shows = createShows();
+        EpisodeIndex.Builder builder = EpisodeIndex.EMPTY.withShows(shows).edit();
+        for (int i = 0; i < count; i++) {
+            builder.put(createEpisode(shows.get(i % SHOW_COUNT), i));
+        }
+        EpisodeIndex index = builder.build(count);
+
+        List<Episode> refresh = new ArrayList<>();
+        for (int i = count / 2; i < count + count / 2; i++) {
+            refresh.add(createEpisode(shows.get(i % SHOW_COUNT), i));
+        }
+
+        long startTime = System.nanoTime();
+        builder = index.edit();
+        for (Episode episode : refresh) {
+            if (builder.getEpisode(episode.getTitle()) == null) {
+                builder.put(episode);
+            }
+        }
+        index = builder.build(count);
+        long nanos = System.nanoTime() - startTime;
+
+        assertEquals(count, index.getEpisodes().size());
+        return nanos;
+    }
+
+    private static List<Show> createShows() {
+        List<Show> shows = new ArrayList<>();
+        for (int i = 0; i < SHOW_COUNT; i++) {
+            Show show = new Show();
+            show.setId(1600 + i);
+            show.setTitle("Show " + i);
+            shows.add(show);
+        }
+        return shows;
+    }
+
+    private static Episode createEpisode(Show show, int number) {
+        Episode episode = new Episode();
+        episode.setTitle("Episode " + number);
+        episode.setPublicationDate(new Date(1457136000000L + number * 60000L));
+        episode.setShow(show);
+        return episode;
+    }
+}
@@ -0,0 +1,142 @@
+package com.tragicfruit.twitcast.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.tragicfruit.twitcast.database.TWiTDbSchema.EpisodeTable;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares rewriting the whole episodes table, as saveEpisodes used to, with TableWriter saving
+ * a refresh where a few episodes were added, changed or evicted. Timings are logged.
+ */
+public class TableWriterBenchmark extends AndroidTestCase {
+    private static final String TAG = "TableWriterBenchmark";
+    private static final String DATABASE_NAME = "tableWriterBenchmark.db";
+
+    private static final String[] COLUMNS = {
+            EpisodeTable.Cols.TITLE,
+            EpisodeTable.Cols.PUBLICATION_DATE,
+            EpisodeTable.Cols.SUBTITLE,
+            EpisodeTable.Cols.SHOW_NOTES,
+            EpisodeTable.Cols.VIDEO_HD_URL,
+            EpisodeTable.Cols.VIDEO_LARGE_URL,
+            EpisodeTable.Cols.VIDEO_SMALL_URL,
+            EpisodeTable.Cols.AUDIO_URL,
+            EpisodeTable.Cols.RUNNING_TIME,
+            EpisodeTable.Cols.SHOW_ID
+    };
+
+    private SQLiteDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File file = getContext().getDatabasePath(DATABASE_NAME);
+        SQLiteDatabase.deleteDatabase(file);
+        file.getParentFile().mkdirs();
+
+        mDatabase = SQLiteDatabase.openOrCreateDatabase(file, null);
+        new TWiTBaseHelper(getContext()).onCreate(mDatabase);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        SQLiteDatabase.deleteDatabase(getContext().getDatabasePath(DATABASE_NAME));
+        super.tearDown();
+    }
+
+    public void test250() {
+        benchmark(250);
+    }
+
+    public void test2500() {
+        benchmark(2500);
+    }
+
+    public void test25000() {
+        benchmark(25000);
+    }
+
+    private void benchmark(int rowCount) {
+        Map<String, Object[]> rows = createRows(rowCount, 0);
+
+        long fullRewriteMillis = fullRewrite(rows);
+        assertEquals(rowCount, countRows());
+
+        TableWriter writer = new TableWriter(EpisodeTable.NAME, COLUMNS, EpisodeTable.Cols.TITLE);
+        writer.setSavedRows(rows);
+
+        // a typical refresh: a new episode, an edited one and the oldest evicted
+        Map<String, Object[]> refreshed = createRows(rowCount, 1);
+        Object[] edited = refreshed.get(getTitle(rowCount / 2));
+        edited[3] = "Updated show notes";
+
+        TableWriter.Result result = writer.write(mDatabase, refreshed);
+        assertEquals(1, result.mInserted);
+        assertEquals(1, result.mUpdated);
+        assertEquals(1, result.mDeleted);
+        assertEquals(rowCount, countRows());
+
+        // nothing changed since the last write
+        TableWriter.Result unchanged = writer.write(mDatabase, refreshed);
+        assertTrue(unchanged.isEmpty());
+
+        Log.i(TAG, rowCount + " rows: full rewrite " + fullRewriteMillis + "ms, incremental "
+                + result.mMillis + "ms, unchanged " + unchanged.mMillis + "ms");
+    }
+
+    private long fullRewrite(Map<String, Object[]> rows) {
+        long startTime = System.currentTimeMillis();
+
+        mDatabase.delete(EpisodeTable.NAME, null, null);
+        for (Object[] row : rows.values()) {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (row[i] instanceof Number) {
+                    values.put(COLUMNS[i], ((Number) row[i]).longValue());
+                } else {
+                    values.put(COLUMNS[i], (String) row[i]);
+                }
+            }
+            mDatabase.insert(EpisodeTable.NAME, null, values);
+        }
+
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private int countRows() {
+        return (int) mDatabase.compileStatement("select count(*) from " + EpisodeTable.NAME)
+                .simpleQueryForLong();
+    }
+
+    private static Map<String, Object[]> createRows(int rowCount, int offset) {
+        Map<String, Object[]> rows = new LinkedHashMap<>();
+        for (int i = offset; i < rowCount + offset; i++) {
+            String title = getTitle(i);
+            rows.put(title, new Object[] {
+                    title,
+                    1457136000000L + i * 3600000L,
+                    "Subtitle " + i,
+                    "<p>Show notes for episode " + i + "</p>",
+                    "http://example.com/" + i + "_hd.mp4",
+                    "http://example.com/" + i + "_large.mp4",
+                    "http://example.com/" + i + "_small.mp4",
+                    "http://example.com/" + i + ".mp3",
+                    "1:23:45",
+                    i % 40
+            });
+        }
+        return rows;
+    }
+
+    private static String getTitle(int i) {
+        return "Episode " + i;
+    }
+}
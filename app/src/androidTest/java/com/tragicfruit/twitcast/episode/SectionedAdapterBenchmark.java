@@ -0,0 +1,117 @@
+package com.tragicfruit.twitcast.episode;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times the position mapping SectionedRecyclerViewAdapter does as a list is flung through, over
+ * thousands of episodes in hundreds of day sections, against the linear walk it used to do.
+ * Timings are logged.
+ */
+public class SectionedAdapterBenchmark extends AndroidTestCase {
+    private static final String TAG = "SectionedAdapterBench";
+
+    private static final int EPISODE_COUNT = 5000;
+    private static final int EPISODES_PER_DAY = 10;
+    private static final int FLINGS = 20;
+
+    private static class CountAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return EPISODE_COUNT;
+        }
+    }
+
+    public void testPortrait() {
+        benchmark(false);
+    }
+
+    public void testLandscape() {
+        benchmark(true);
+    }
+
+    private void benchmark(boolean landscape) {
+        SectionedRecyclerViewAdapter.Section[] sections = createSections(landscape);
+        SectionedRecyclerViewAdapter adapter = new SectionedRecyclerViewAdapter(getContext(), 0, 0,
+                new CountAdapter());
+        adapter.setSections(sections);
+        int itemCount = adapter.getItemCount();
+        assertEquals(EPISODE_COUNT + sections.length, itemCount);
+
+        // the same calls a bind makes, top to bottom and back
+        long checksum = 0;
+        long startTime = System.nanoTime();
+        for (int fling = 0; fling < FLINGS; fling++) {
+            for (int i = 0; i < itemCount; i++) {
+                int position = fling % 2 == 0 ? i : itemCount - 1 - i;
+                checksum += adapter.getItemViewType(position);
+                checksum += adapter.sectionedPositionToPosition(position);
+            }
+        }
+        long mappedTime = System.nanoTime() - startTime;
+
+        long linearChecksum = 0;
+        startTime = System.nanoTime();
+        for (int fling = 0; fling < FLINGS; fling++) {
+            for (int i = 0; i < itemCount; i++) {
+                int position = fling % 2 == 0 ? i : itemCount - 1 - i;
+                int basePosition = linearSectionedPositionToPosition(sections, position);
+                linearChecksum += basePosition == RecyclerView.NO_POSITION ? 0 : 1;
+                linearChecksum += basePosition;
+            }
+        }
+        long linearTime = System.nanoTime() - startTime;
+
+        assertEquals(linearChecksum, checksum);
+        for (int position = 0; position < EPISODE_COUNT; position++) {
+            assertEquals(position, adapter.sectionedPositionToPosition(
+                    adapter.positionToSectionedPosition(position)));
+        }
+
+        int binds = FLINGS * itemCount;
+        Log.i(TAG, (landscape ? "Landscape, " : "Portrait, ") + sections.length + " sections: "
+                + mappedTime / binds + " ns/bind, linear walk " + linearTime / binds + " ns/bind");
+    }
+
+    // a day's header every EPISODES_PER_DAY episodes, with the fillers landscape adds
+    private static SectionedRecyclerViewAdapter.Section[] createSections(boolean landscape) {
+        List<SectionedRecyclerViewAdapter.Section> sections = new ArrayList<>();
+        for (int first = 0; first < EPISODE_COUNT; first += EPISODES_PER_DAY) {
+            sections.add(new SectionedRecyclerViewAdapter.Section(first, "Day " + first));
+            if (landscape) {
+                sections.add(new SectionedRecyclerViewAdapter.Section(first, ""));
+            }
+        }
+        return sections.toArray(new SectionedRecyclerViewAdapter.Section[sections.size()]);
+    }
+
+    // as the adapter mapped positions before, walking the sections from the top
+    private static int linearSectionedPositionToPosition(
+            SectionedRecyclerViewAdapter.Section[] sections, int sectionedPosition) {
+        int offset = 0;
+        for (SectionedRecyclerViewAdapter.Section section : sections) {
+            if (section.sectionedPosition == sectionedPosition) {
+                return RecyclerView.NO_POSITION;
+            }
+            if (section.sectionedPosition > sectionedPosition) {
+                break;
+            }
+            --offset;
+        }
+        return sectionedPosition + offset;
+    }
+}
@@ -31,6 +31,7 @@ import com.tragicfruit.twitcast.constants.Constants;
 import com.tragicfruit.twitcast.database.TWiTLab;
 import com.tragicfruit.twitcast.dialogs.LeaveFeedbackFragment;
 import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.episode.EpisodeDisplay;
 import com.tragicfruit.twitcast.episode.EpisodeListFragment;
 import com.tragicfruit.twitcast.episode.LatestFragment;
 import com.tragicfruit.twitcast.stream.LiveFragment;
@@ -156,6 +157,14 @@ public abstract class GoogleCastActivity extends AppCompatActivity
         mCastSessionManager.removeSessionManagerListener(this, CastSession.class);
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        // don't leave saves waiting while the app may be killed in the background
+        TWiTLab.get(this).flush();
+    }
+
     private boolean isConnected() {
         CastSession castSession = CastContext.getSharedInstance(this)
                 .getSessionManager()
@@ -190,10 +199,11 @@ public abstract class GoogleCastActivity extends AppCompatActivity
     public void playVideo(Episode episode, int position) {
         mEpisodeToPlay = episode;
         mPosition = position;
+        EpisodeDisplay display = mEpisodeToPlay.getDisplay();
 
         MediaMetadata mediaMetadata = new MediaMetadata(MediaMetadata.MEDIA_TYPE_MOVIE);
         mediaMetadata.putString(MediaMetadata.KEY_TITLE, mEpisodeToPlay.getShow().getTitle());
-        mediaMetadata.putString(MediaMetadata.KEY_SUBTITLE, mEpisodeToPlay.getShortTitle());
+        mediaMetadata.putString(MediaMetadata.KEY_SUBTITLE, display.getShortTitle());
         mediaMetadata.putString(MediaMetadata.KEY_STUDIO, getString(R.string.studio_name));
         mediaMetadata.addImage(new WebImage(Uri.parse(Utils.getUrlWithPrefix(mEpisodeToPlay.getShow().getCoverArtUrlSmall(), true))));
         mediaMetadata.addImage(new WebImage(Uri.parse(Utils.getUrlWithPrefix(mEpisodeToPlay.getShow().getCoverArtUrl(), true))));
@@ -209,11 +219,14 @@ public abstract class GoogleCastActivity extends AppCompatActivity
             return;
         }
 
-        mSelectedMediaInfo = new MediaInfo.Builder(url)
+        MediaInfo.Builder mediaInfoBuilder = new MediaInfo.Builder(url)
                 .setContentType(contentType)
                 .setStreamType(MediaInfo.STREAM_TYPE_BUFFERED)
-                .setMetadata(mediaMetadata)
-                .build();
+                .setMetadata(mediaMetadata);
+        if (display.getDuration() >= 0) {
+            mediaInfoBuilder.setStreamDuration(display.getDuration() * 1000L);
+        }
+        mSelectedMediaInfo = mediaInfoBuilder.build();
 
         if (isConnected()) {
             startPlayingSelectedMedia();
@@ -331,7 +344,7 @@ public abstract class GoogleCastActivity extends AppCompatActivity
         if (mSelectedMediaInfo.getStreamType() != MediaInfo.STREAM_TYPE_LIVE) {
             MediaMetadata mediaMetadata = new MediaMetadata(MediaMetadata.MEDIA_TYPE_MUSIC_TRACK);
             mediaMetadata.putString(MediaMetadata.KEY_TITLE, mEpisodeToPlay.getShow().getTitle());
-            mediaMetadata.putString(MediaMetadata.KEY_ALBUM_TITLE, mEpisodeToPlay.getShortTitle());
+            mediaMetadata.putString(MediaMetadata.KEY_ALBUM_TITLE, mEpisodeToPlay.getDisplay().getShortTitle());
             mediaMetadata.putString(MediaMetadata.KEY_ALBUM_ARTIST, getString(R.string.studio_name));
             mediaMetadata.putString(MediaMetadata.KEY_ARTIST, getString(R.string.studio_name));
             mediaMetadata.addImage(new WebImage(Uri.parse(mEpisodeToPlay.getShow().getCoverArtUrlSmall())));
@@ -4,6 +4,8 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 
+import com.tragicfruit.twitcast.database.TWiTLab;
+
 /**
  * Created by Jeremy on 6/03/2016.
  */
@@ -13,6 +15,9 @@ public class SplashActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // start loading the library in the background while the menu is created
+        TWiTLab.get(this);
+
         Intent intent = new Intent(this, MenuPagerActivity.class);
         startActivity(intent);
         finish();
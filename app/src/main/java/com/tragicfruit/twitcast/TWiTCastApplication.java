@@ -2,6 +2,8 @@ package com.tragicfruit.twitcast;
 
 import android.app.Application;
 
+import com.tragicfruit.twitcast.utils.CoverArtCache;
+
 /**
  * Created by Jeremy on 17/03/2016.
  */
@@ -28,4 +30,16 @@ public class TWiTCastApplication extends Application {
 //
 //        VideoCastManager.initialize(this, options);
     }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // decoded cover art is the bulk of the heap, and is decoded again as it is shown
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            CoverArtCache.get(this).trimMemory(true);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            CoverArtCache.get(this).trimMemory(false);
+        }
+    }
 }
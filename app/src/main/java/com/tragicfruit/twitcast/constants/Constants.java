@@ -18,6 +18,7 @@ public class Constants {
     public static final String BRICKHOUSE_VIDEO_HD_FEED = "http://feeds.twit.tv/brickhouse_video_hd.xml";
 
     public static final String COVER_ART_FOLDER = "cover_art";
+    public static final String COVER_ART_THUMBNAIL_FOLDER = "cover_art_thumbnails";
     public static final String LOGO_FOLDER = "logo";
     public static final String LOGO_FILE = "twitlogo_1400x1400.png";
     public static final String LOGO_URL = "https://www.dropbox.com/s/5tnbxitzu2rcxs9/twitlogo_600x600.png?raw=1";
@@ -31,7 +32,7 @@ public class Constants {
     public static final StreamQuality DEFAULT_QUALITY = StreamQuality.VIDEO_HD;
     public static final StreamSource DEFAULT_SOURCE = StreamSource.USTREAM;
 
-    public static final int MAX_NUMBER_OF_EPISODES = 250;
+    public static final int MAX_NUMBER_OF_EPISODES = 2500;
 
     public static final int[] EXCLUDED_SHOWS = {
             1683, // TWiT Bits
@@ -0,0 +1,27 @@
+package com.tragicfruit.twitcast.database;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Recycles the copy buffers used for HTTP bodies, so each download doesn't allocate its own.
+ */
+class BufferPool {
+    static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED = 8;
+
+    private static final BlockingQueue<byte[]> sBuffers = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    private BufferPool() {
+    }
+
+    static byte[] acquire() {
+        byte[] buffer = sBuffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    static void release(byte[] buffer) {
+        // dropped if the pool is already full
+        sBuffers.offer(buffer);
+    }
+}
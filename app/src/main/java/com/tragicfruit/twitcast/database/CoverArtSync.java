@@ -0,0 +1,260 @@
+package com.tragicfruit.twitcast.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.tragicfruit.twitcast.constants.Constants;
+import com.tragicfruit.twitcast.show.Show;
+import com.tragicfruit.twitcast.utils.CoverArtThumbnails;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Brings the cover art folder in line with the shows' cover art URLs. Images are downloaded a
+ * few at a time, each into a temp file that is renamed over the old image once complete, so the
+ * folder never holds a partial or missing image. Unchanged images are skipped, either by a 304
+ * from the server or by comparing the downloaded content with the file already on disk.
+ */
+public class CoverArtSync {
+    private static final String TAG = "CoverArtSync";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int DOWNLOAD_THREAD_COUNT = 4;
+
+    private static final ExecutorService sDownloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREAD_COUNT);
+
+    private final File mFolder;
+    private final CoverArtThumbnails mThumbnails;
+    private final ResponseValidatorCache mValidatorCache;
+    private final Map<String, ResponseValidatorCache.Validator> mPendingValidators = new ConcurrentHashMap<>();
+
+    public CoverArtSync(Context context) {
+        mFolder = new File(context.getFilesDir(), Constants.COVER_ART_FOLDER);
+        mThumbnails = new CoverArtThumbnails(context);
+        mValidatorCache = ResponseValidatorCache.get(context);
+    }
+
+    /**
+     * Downloads the cover art of every show, setting its local path, then deletes images no
+     * longer used by any show. Nothing is deleted if any download fails.
+     *
+     * @return the shows whose image changed on disk
+     */
+    public List<Show> sync(List<Show> shows) throws IOException {
+        if (!mFolder.exists() && !mFolder.mkdirs()) {
+            throw new IOException("Error creating cover art folder");
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (final Show show : shows) {
+                futures.add(sDownloadExecutor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return download(show);
+                    }
+                }));
+            }
+
+            List<Show> changedShows = new ArrayList<>();
+            for (int i = 0; i < shows.size(); i++) {
+                if (futures.get(i).get()) {
+                    changedShows.add(shows.get(i));
+                }
+            }
+
+            mValidatorCache.putAll(mPendingValidators);
+            deleteStaleFiles(shows);
+
+            Log.d(TAG, "Synced cover art in " + (System.currentTimeMillis() - startTime) + "ms, "
+                    + changedShows.size() + " of " + shows.size() + " changed");
+            return changedShows;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error syncing cover art", cause);
+        } catch (InterruptedException e) {
+            // calling task was cancelled
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Syncing cover art cancelled");
+        } finally {
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the show's image on disk was replaced.
+     */
+    private boolean download(Show show) throws IOException {
+        String urlSpec = show.getCoverArtUrl();
+        File file = new File(mFolder, getImageFileName(urlSpec));
+
+        Map<String, String> headers = new HashMap<>();
+        if (file.exists()) {
+            mValidatorCache.addConditionalHeaders(headers, urlSpec);
+        }
+
+        HttpResponse response = TWiTFetcher.getTransport().get(urlSpec, headers);
+        try {
+            if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                setCoverArtFile(show, file, false);
+                return false;
+            }
+
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(response.getMessage() + ": with " + urlSpec);
+            }
+
+            File tempFile = new File(mFolder, file.getName() + TEMP_SUFFIX);
+            byte[] hash = writeToFile(response, tempFile);
+
+            ResponseValidatorCache.Validator validator = ResponseValidatorCache.getValidator(response);
+            if (validator != null) {
+                mPendingValidators.put(urlSpec, validator);
+            }
+
+            if (file.exists() && Arrays.equals(hash, hashFile(file))) {
+                Log.d(TAG, "Cover art unchanged: " + file.getName());
+                tempFile.delete();
+                setCoverArtFile(show, file, false);
+                return false;
+            }
+
+            // rename within the folder is atomic, so readers see the old image or the new one
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Error renaming " + tempFile.getAbsolutePath());
+            }
+
+            Log.i(TAG, "File saved to: " + file.getAbsolutePath());
+            setCoverArtFile(show, file, true);
+            return true;
+        } finally {
+            response.close();
+        }
+    }
+
+    private void setCoverArtFile(Show show, File file, boolean changed) {
+        show.setCoverArtLocalPath(file.getAbsolutePath());
+
+        // the original is still decoded if a thumbnail is missing
+        try {
+            mThumbnails.render(file, changed);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot render thumbnails for " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Writes the response body to the file and returns its hash.
+     */
+    private static byte[] writeToFile(HttpResponse response, File file) throws IOException {
+        MessageDigest digest = newDigest();
+        OutputStream out = null;
+        boolean written = false;
+        try {
+            out = new DigestOutputStream(new FileOutputStream(file), digest);
+            response.copyTo(out);
+            out.close();
+            out = null;
+            written = true;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            if (!written) {
+                file.delete();
+            }
+        }
+
+        return digest.digest();
+    }
+
+    private static byte[] hashFile(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        } finally {
+            BufferPool.release(buffer);
+            in.close();
+        }
+
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void deleteStaleFiles(List<Show> shows) {
+        Set<String> fileNames = new HashSet<>();
+        for (Show show : shows) {
+            fileNames.add(getImageFileName(show.getCoverArtUrl()));
+        }
+
+        mThumbnails.deleteStale(fileNames);
+
+        File[] files = mFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (fileNames.contains(file.getName())) {
+                continue;
+            }
+
+            if (file.delete()) {
+                Log.d(TAG, "Deleted " + file.getAbsolutePath());
+            } else {
+                Log.d(TAG, "Failed to delete " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    static String getImageFileName(String url) {
+        int startIndex = url.lastIndexOf('/');
+        int endIndex = url.lastIndexOf('?');
+        if (endIndex < startIndex) {
+            endIndex = url.length();
+        }
+
+        return url.substring(startIndex + 1, endIndex);
+    }
+}
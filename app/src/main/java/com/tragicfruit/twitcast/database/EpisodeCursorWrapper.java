@@ -4,6 +4,7 @@ import android.database.Cursor;
 import android.database.CursorWrapper;
 
 import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.episode.EpisodeDisplay;
 import com.tragicfruit.twitcast.show.Show;
 import com.tragicfruit.twitcast.database.TWiTDbSchema.EpisodeTable;
 
@@ -23,13 +24,18 @@ public class EpisodeCursorWrapper extends CursorWrapper {
     public Episode getEpisode() {
         String title = getString(getColumnIndex(EpisodeTable.Cols.TITLE));
         long publicationDate = getLong(getColumnIndex(EpisodeTable.Cols.PUBLICATION_DATE));
-        String subtitle = getString(getColumnIndex(EpisodeTable.Cols.SUBTITLE));
-        String showNotes = getString(getColumnIndex(EpisodeTable.Cols.SHOW_NOTES));
+        String subtitle = getOptionalString(EpisodeTable.Cols.SUBTITLE);
+        String showNotes = getOptionalString(EpisodeTable.Cols.SHOW_NOTES);
         String videoHdUrl = getString(getColumnIndex(EpisodeTable.Cols.VIDEO_HD_URL));
         String videoLargeUrl = getString(getColumnIndex(EpisodeTable.Cols.VIDEO_LARGE_URL));
         String videoSmallUrl = getString(getColumnIndex(EpisodeTable.Cols.VIDEO_SMALL_URL));
         String audioUrl = getString(getColumnIndex(EpisodeTable.Cols.AUDIO_URL));
-        String runningTime = getString(getColumnIndex(EpisodeTable.Cols.RUNNING_TIME));
+        int durationIndex = getColumnIndex(EpisodeTable.Cols.DURATION);
+        int duration = isNull(durationIndex) ? -1 : getInt(durationIndex);
+        // only episodes saved before durations were have a running time saved
+        String runningTime = duration >= 0
+                ? EpisodeDisplay.formatRunningTime(mDatabase.getContext(), duration)
+                : getString(getColumnIndex(EpisodeTable.Cols.RUNNING_TIME));
         int showId = getInt(getColumnIndex(EpisodeTable.Cols.SHOW_ID));
 
         Episode episode = new Episode();
@@ -42,10 +48,20 @@ public class EpisodeCursorWrapper extends CursorWrapper {
         episode.setVideoSmallUrl(videoSmallUrl);
         episode.setAudioUrl(audioUrl);
         episode.setRunningTime(runningTime);
+        episode.setDuration(duration);
 
         Show show = mDatabase.getShow(showId);
         episode.setShow(show);
+        if (show != null) {
+            episode.getDisplay(); // while still in the background
+        }
 
         return episode;
     }
+
+    // details are left out of list queries
+    private String getOptionalString(String column) {
+        int index = getColumnIndex(column);
+        return index == -1 ? null : getString(index);
+    }
 }
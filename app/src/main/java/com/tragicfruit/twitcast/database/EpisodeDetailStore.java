@@ -0,0 +1,147 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.episode.EpisodeDetails;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Subtitles and show notes of episodes, by episode title. Details of fetched episodes are held
+ * until they are saved; saved ones are read from the database when asked for, with the most
+ * recently used kept in a cache bounded by the length of their text.
+ */
+class EpisodeDetailStore {
+    interface Loader {
+        /**
+         * Returns the saved details, or null if there are none. Called off the main thread.
+         */
+        EpisodeDetails load(String title);
+    }
+
+    private final Loader mLoader;
+    private final int mMaxCachedLength;
+    private final Map<String, EpisodeDetails> mUnsaved = new HashMap<>();
+    private final LinkedHashMap<String, EpisodeDetails> mCache = new LinkedHashMap<>(16, 0.75f, true);
+    private int mCachedLength;
+
+    private int mHits;
+    private int mMisses;
+
+    EpisodeDetailStore(Loader loader, int maxCachedLength) {
+        mLoader = loader;
+        mMaxCachedLength = maxCachedLength;
+    }
+
+    /**
+     * Holds the details of a fetched episode until markSaved() is called with them.
+     */
+    synchronized void putUnsaved(String title, EpisodeDetails details) {
+        mUnsaved.put(title, details);
+        uncache(title);
+    }
+
+    /**
+     * Returns a copy of the details waiting to be saved.
+     */
+    synchronized Map<String, EpisodeDetails> getUnsaved() {
+        return new HashMap<>(mUnsaved);
+    }
+
+    /**
+     * Lets go of details once written, unless they were replaced in the meantime.
+     */
+    synchronized void markSaved(Map<String, EpisodeDetails> saved) {
+        for (Map.Entry<String, EpisodeDetails> entry : saved.entrySet()) {
+            if (mUnsaved.get(entry.getKey()) == entry.getValue()) {
+                mUnsaved.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Forgets the episode's details, e.g. once it is evicted.
+     */
+    synchronized void remove(String title) {
+        mUnsaved.remove(title);
+        uncache(title);
+    }
+
+    synchronized void clear() {
+        mUnsaved.clear();
+        mCache.clear();
+        mCachedLength = 0;
+    }
+
+    /**
+     * Returns the details if held in memory, without loading them.
+     */
+    synchronized EpisodeDetails getCached(String title) {
+        EpisodeDetails details = mUnsaved.get(title);
+        if (details == null) {
+            details = mCache.get(title);
+        }
+
+        if (details != null) {
+            mHits++;
+        }
+        return details;
+    }
+
+    /**
+     * Returns the details, loading them if they are not in memory. Call off the main thread.
+     */
+    EpisodeDetails get(String title) {
+        EpisodeDetails details = getCached(title);
+        if (details != null) {
+            return details;
+        }
+
+        details = mLoader.load(title);
+
+        synchronized (this) {
+            mMisses++;
+            // details fetched during the load are newer than the saved ones
+            if (mUnsaved.containsKey(title)) {
+                return mUnsaved.get(title);
+            }
+            if (details != null) {
+                cache(title, details);
+            }
+        }
+        return details;
+    }
+
+    // callers hold the lock
+    private void cache(String title, EpisodeDetails details) {
+        uncache(title);
+        mCache.put(title, details);
+        mCachedLength += details.getLength();
+
+        Iterator<EpisodeDetails> iterator = mCache.values().iterator();
+        while (mCachedLength > mMaxCachedLength && iterator.hasNext()) {
+            EpisodeDetails eldest = iterator.next();
+            // always keep the newest entry, even if it is larger than the cache
+            if (eldest == details) {
+                break;
+            }
+            mCachedLength -= eldest.getLength();
+            iterator.remove();
+        }
+    }
+
+    // callers hold the lock
+    private void uncache(String title) {
+        EpisodeDetails removed = mCache.remove(title);
+        if (removed != null) {
+            mCachedLength -= removed.getLength();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Episode details: " + mUnsaved.size() + " unsaved, " + mCache.size() + " cached ("
+                + mCachedLength + " chars), " + mHits + " hits, " + mMisses + " loads";
+    }
+}
@@ -0,0 +1,219 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.show.Show;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the shows and episodes, indexed by show id, episode title and show.
+ *
+ * Changes build a new snapshot, leaving this one untouched, so readers on any thread can keep
+ * using the lists they were handed while a refresh publishes a newer version. Episodes are
+ * added through a Builder, which sorts them once and merges them into the date-ordered lists.
+ */
+final class EpisodeIndex {
+    static final EpisodeIndex EMPTY = new EpisodeIndex(new ArrayList<Show>(),
+            new HashMap<Integer, Show>(), new HashMap<String, Episode>(), new ArrayList<Episode>());
+
+    /**
+     * Newest first, then by title so episodes published together keep a stable order.
+     */
+    static final Comparator<Episode> NEWEST_FIRST = new Comparator<Episode>() {
+        @Override
+        public int compare(Episode lhs, Episode rhs) {
+            long firstDate = lhs.getPublicationDate().getTime();
+            long secondDate = rhs.getPublicationDate().getTime();
+
+            if (firstDate != secondDate) {
+                return firstDate > secondDate ? -1 : 1;
+            }
+            return lhs.getTitle().compareTo(rhs.getTitle());
+        }
+    };
+
+    private final List<Show> mShows;
+    private final Map<Integer, Show> mShowsById;
+    private final Map<String, Episode> mEpisodesByTitle;
+    private final List<Episode> mEpisodes;
+    private final Map<Integer, List<Episode>> mEpisodesByShow = new HashMap<>();
+
+    // takes ownership of the collections passed in, episodes must be sorted
+    private EpisodeIndex(List<Show> shows, Map<Integer, Show> showsById,
+                         Map<String, Episode> episodesByTitle, List<Episode> episodes) {
+        mShows = Collections.unmodifiableList(shows);
+        mShowsById = showsById;
+        mEpisodesByTitle = episodesByTitle;
+        mEpisodes = Collections.unmodifiableList(episodes);
+
+        Map<Integer, List<Episode>> episodesByShow = new HashMap<>();
+        for (Episode episode : episodes) {
+            int showId = episode.getShow().getId();
+            List<Episode> showEpisodes = episodesByShow.get(showId);
+            if (showEpisodes == null) {
+                showEpisodes = new ArrayList<>();
+                episodesByShow.put(showId, showEpisodes);
+            }
+            showEpisodes.add(episode);
+        }
+        for (Map.Entry<Integer, List<Episode>> entry : episodesByShow.entrySet()) {
+            mEpisodesByShow.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+    }
+
+    List<Show> getShows() {
+        return mShows;
+    }
+
+    Show getShow(int id) {
+        return mShowsById.get(id);
+    }
+
+    Episode getEpisode(String title) {
+        return mEpisodesByTitle.get(title);
+    }
+
+    List<Episode> getEpisodes() {
+        return mEpisodes;
+    }
+
+    List<Episode> getEpisodes(Show show) {
+        List<Episode> episodes = mEpisodesByShow.get(show.getId());
+        return episodes == null ? Collections.<Episode>emptyList() : episodes;
+    }
+
+    /**
+     * Returns a snapshot with the given shows. Episodes move over to the show with the same id,
+     * and are dropped if their show is gone.
+     */
+    EpisodeIndex withShows(List<Show> shows) {
+        Map<Integer, Show> showsById = new HashMap<>();
+        for (Show show : shows) {
+            showsById.put(show.getId(), show);
+        }
+
+        Map<String, Episode> episodesByTitle = new HashMap<>();
+        List<Episode> episodes = new ArrayList<>();
+        for (Episode episode : mEpisodes) {
+            Show show = showsById.get(episode.getShow().getId());
+            if (show == null) {
+                continue;
+            }
+
+            // published episodes are never changed, so relink a copy
+            if (show != episode.getShow()) {
+                episode = copy(episode, show);
+            }
+            episodesByTitle.put(episode.getTitle(), episode);
+            episodes.add(episode);
+        }
+
+        return new EpisodeIndex(new ArrayList<>(shows), showsById, episodesByTitle, episodes);
+    }
+
+    /**
+     * Returns a snapshot with the same shows and no episodes.
+     */
+    EpisodeIndex withoutEpisodes() {
+        return new EpisodeIndex(new ArrayList<>(mShows), mShowsById,
+                new HashMap<String, Episode>(), new ArrayList<Episode>());
+    }
+
+    Builder edit() {
+        return new Builder(this);
+    }
+
+    private static Episode copy(Episode episode, Show show) {
+        Episode copy = episode.copy();
+        copy.setShow(show);
+        copy.getDisplay(); // built with the snapshot, off the main thread
+        return copy;
+    }
+
+    /**
+     * Collects added episodes for a new snapshot. Not thread safe; build it once on one thread,
+     * then publish the result.
+     */
+    static class Builder {
+        private final EpisodeIndex mBase;
+        private final Map<String, Episode> mEpisodesByTitle;
+        private final List<Episode> mPending = new ArrayList<>();
+        private final List<Episode> mEvicted = new ArrayList<>();
+
+        private Builder(EpisodeIndex base) {
+            mBase = base;
+            mEpisodesByTitle = new HashMap<>(base.mEpisodesByTitle);
+        }
+
+        Episode getEpisode(String title) {
+            return mEpisodesByTitle.get(title);
+        }
+
+        /**
+         * Adds the episode, replacing any episode with the same title. The episode must not be
+         * changed afterwards.
+         */
+        void put(Episode episode) {
+            if (episode.getShow() == null) {
+                throw new IllegalArgumentException("No show for " + episode.getTitle());
+            }
+
+            if (mEpisodesByTitle.put(episode.getTitle(), episode) != episode) {
+                mPending.add(episode);
+            }
+        }
+
+        // false once replaced or evicted
+        private boolean isCurrent(Episode episode) {
+            return mEpisodesByTitle.get(episode.getTitle()) == episode;
+        }
+
+        /**
+         * Sorts the added episodes and merges them into the base snapshot's episodes, dropping
+         * replaced ones. Episodes beyond the newest maxEpisodes are evicted in the same pass.
+         */
+        EpisodeIndex build(int maxEpisodes) {
+            Collections.sort(mPending, NEWEST_FIRST);
+
+            List<Episode> episodes = mBase.mEpisodes;
+            List<Episode> merged = new ArrayList<>(Math.min(episodes.size() + mPending.size(), maxEpisodes));
+            int i = 0;
+            int j = 0;
+            while (i < episodes.size() || j < mPending.size()) {
+                Episode episode;
+                if (j == mPending.size()
+                        || (i < episodes.size() && NEWEST_FIRST.compare(episodes.get(i), mPending.get(j)) <= 0)) {
+                    episode = episodes.get(i++);
+                } else {
+                    episode = mPending.get(j++);
+                }
+
+                if (!isCurrent(episode)) {
+                    continue;
+                }
+
+                if (merged.size() < maxEpisodes) {
+                    merged.add(episode);
+                } else {
+                    mEpisodesByTitle.remove(episode.getTitle());
+                    mEvicted.add(episode);
+                }
+            }
+
+            return new EpisodeIndex(new ArrayList<>(mBase.mShows), mBase.mShowsById,
+                    mEpisodesByTitle, merged);
+        }
+
+        /**
+         * Returns the episodes evicted by build().
+         */
+        List<Episode> getEvicted() {
+            return mEvicted;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.tragicfruit.twitcast.database;
+
+import android.util.Log;
+
+import com.tragicfruit.twitcast.episode.Episode;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A list of saved episodes, newest first, that loads them from the database a page at a time as
+ * they are bound. Only the day it was published and two hashes are held for every episode, so a
+ * list can be sized, split into day sections and diffed against an older one without building
+ * its episodes. Loaded pages are kept in a small LRU cache and loaded again if scrolled back to once
+ * evicted.
+ *
+ * Use on the main thread. Pages load in the background and the listener is told once they are in.
+ * The count, days and hashes never change, so they can also be read in the background, e.g. to
+ * diff two pagers.
+ */
+public class EpisodePager {
+    private static final String TAG = "EpisodePager";
+
+    public interface Listener {
+        void onEpisodesLoaded(int positionStart, int itemCount);
+    }
+
+    interface PageLoader {
+        /**
+         * Returns the count episodes from position start, with null for any whose show is gone
+         * or that were deleted since the pager was made. Called on a background thread.
+         */
+        List<Episode> load(int start, int count);
+    }
+
+    private final int[] mDays;
+    private final int[] mKeys;
+    private final int[] mContentHashes;
+    private final PageLoader mLoader;
+    private final int mPageSize;
+    private final int mPrefetchDistance;
+    private final Executor mLoadExecutor;
+    private final Executor mCallbackExecutor;
+    private final Map<Integer, List<Episode>> mPages;
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+    private Listener mListener;
+    private boolean mClosed;
+
+    /**
+     * @param days every episode was published on, as DayBuckets numbers, in list order
+     * @param keys hashes of every episode's title
+     * @param contentHashes hashes of every episode's saved row
+     * @param callbackExecutor runs on the thread the pager is used on
+     */
+    EpisodePager(int[] days, int[] keys, int[] contentHashes, PageLoader loader,
+                 int pageSize, final int maxPages, Executor loadExecutor, Executor callbackExecutor) {
+        mDays = days;
+        mKeys = keys;
+        mContentHashes = contentHashes;
+        mLoader = loader;
+        mPageSize = pageSize;
+        mPrefetchDistance = pageSize / 4;
+        mLoadExecutor = loadExecutor;
+        mCallbackExecutor = callbackExecutor;
+        mPages = new LinkedHashMap<Integer, List<Episode>>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Episode>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public int getCount() {
+        return mDays.length;
+    }
+
+    /**
+     * Returns the local day the episode was published on, as numbered by DayBuckets.
+     */
+    public int getDay(int position) {
+        return mDays[position];
+    }
+
+    /**
+     * Returns a hash of the episode's title, which identifies it between pagers.
+     */
+    public int getKey(int position) {
+        return mKeys[position];
+    }
+
+    /**
+     * Returns a hash of the episode's saved row, which changes if the row does.
+     */
+    public int getContentHash(int position) {
+        return mContentHashes[position];
+    }
+
+    /**
+     * Returns the episode at the position, or null while its page loads. Pages next to the
+     * position are loaded ahead once it nears their edge.
+     */
+    public Episode getEpisode(int position) {
+        int page = position / mPageSize;
+        int offset = position % mPageSize;
+
+        List<Episode> episodes = mPages.get(page);
+        if (episodes == null) {
+            requestPage(page);
+        }
+
+        if (offset < mPrefetchDistance) {
+            requestPage(page - 1);
+        } else if (offset >= mPageSize - mPrefetchDistance) {
+            requestPage(page + 1);
+        }
+
+        return episodes != null && offset < episodes.size() ? episodes.get(offset) : null;
+    }
+
+    /**
+     * Stops telling the listener about pages, e.g. once replaced by a newer pager.
+     */
+    public void close() {
+        mClosed = true;
+        mListener = null;
+        mPages.clear();
+    }
+
+    private void requestPage(final int page) {
+        final int start = page * mPageSize;
+        if (mClosed || page < 0 || start >= mDays.length
+                || mPages.containsKey(page) || !mLoadingPages.add(page)) {
+            return;
+        }
+
+        final int count = Math.min(mPageSize, mDays.length - start);
+        mLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = System.currentTimeMillis();
+                List<Episode> episodes = null;
+                try {
+                    episodes = mLoader.load(start, count);
+                    Log.d(TAG, "Loaded episodes " + start + "-" + (start + count - 1) + " in "
+                            + (System.currentTimeMillis() - startTime) + "ms");
+                } catch (RuntimeException e) {
+                    // left unloaded, so binding the position again retries
+                    Log.e(TAG, "Error loading episodes from " + start, e);
+                }
+
+                final List<Episode> loadedEpisodes = episodes;
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoadingPages.remove(page);
+                        if (mClosed || loadedEpisodes == null) {
+                            return;
+                        }
+
+                        mPages.put(page, loadedEpisodes);
+                        if (mListener != null) {
+                            mListener.onEpisodesLoaded(start, count);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package com.tragicfruit.twitcast.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A response from an HttpTransport. The body is already decoded if it was sent gzipped.
+ */
+public abstract class HttpResponse implements Closeable {
+
+    public abstract int getCode();
+
+    public abstract String getMessage();
+
+    /**
+     * Returns the named header, or null if the response doesn't have it.
+     */
+    public abstract String getHeader(String name);
+
+    /**
+     * Returns the decoded body. Can only be read once.
+     */
+    public abstract InputStream getBody() throws IOException;
+
+    /**
+     * Returns the length of the decoded body if known, or -1.
+     */
+    public abstract long getContentLength();
+
+    /**
+     * Releases the response. A fully read body leaves the connection to be reused by the next
+     * request to the same host.
+     */
+    @Override
+    public abstract void close();
+
+    public byte[] readBytes() throws IOException {
+        long length = getContentLength();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                length > 0 && length < Integer.MAX_VALUE ? (int) length : BufferPool.BUFFER_SIZE);
+        copyTo(out);
+        return out.toByteArray();
+    }
+
+    public void copyTo(OutputStream out) throws IOException {
+        InputStream in = getBody();
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+}
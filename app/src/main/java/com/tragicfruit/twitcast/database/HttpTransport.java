@@ -0,0 +1,18 @@
+package com.tragicfruit.twitcast.database;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Makes the HTTP GET requests for TWiTFetcher. The default is UrlConnectionTransport; another
+ * implementation can be swapped in with TWiTFetcher.setTransport.
+ */
+public interface HttpTransport {
+    /**
+     * Sends the request and returns once the response headers have arrived. The response must
+     * be closed so its connection can be reused.
+     */
+    HttpResponse get(String urlSpec, Map<String, String> headers) throws IOException;
+
+    TransportStats getStats();
+}
@@ -0,0 +1,178 @@
+package com.tragicfruit.twitcast.database;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Persistent store of ETag / Last-Modified validators keyed by URL, used to make conditional
+ * requests so unchanged feeds come back as a 304 with no body.
+ */
+public class ResponseValidatorCache {
+    private static final String TAG = "ResponseValidatorCache";
+    private static final String CACHE_FILE = "http_validators.properties";
+
+    private static final String KEY_ETAG = "etag ";
+    private static final String KEY_LAST_MODIFIED = "last_modified ";
+
+    private static ResponseValidatorCache sValidatorCache;
+
+    private final File mFile;
+    private final Properties mValidators;
+
+    public static class Validator {
+        private final String mETag;
+        private final String mLastModified;
+
+        public Validator(String eTag, String lastModified) {
+            mETag = eTag;
+            mLastModified = lastModified;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+    }
+
+    public static synchronized ResponseValidatorCache get(Context context) {
+        if (sValidatorCache == null) {
+            sValidatorCache = new ResponseValidatorCache(context.getApplicationContext());
+        }
+
+        return sValidatorCache;
+    }
+
+    private ResponseValidatorCache(Context context) {
+        mFile = new File(context.getFilesDir(), CACHE_FILE);
+        mValidators = new Properties();
+
+        if (mFile.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(mFile);
+                mValidators.load(in);
+            } catch (IOException e) {
+                Log.e(TAG, "Error loading response validators", e);
+                mValidators.clear();
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Returns the validators sent with the response, or null if the server sent none.
+     */
+    public static Validator getValidator(HttpResponse response) {
+        String eTag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+
+        if (eTag == null && lastModified == null) {
+            return null;
+        }
+
+        return new Validator(eTag, lastModified);
+    }
+
+    /**
+     * Adds If-None-Match / If-Modified-Since headers for any validators stored for the URL.
+     */
+    public synchronized void addConditionalHeaders(Map<String, String> headers, String urlSpec) {
+        String eTag = mValidators.getProperty(KEY_ETAG + urlSpec);
+        if (eTag != null) {
+            headers.put("If-None-Match", eTag);
+        }
+
+        String lastModified = mValidators.getProperty(KEY_LAST_MODIFIED + urlSpec);
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * Stores validators for responses that have been fully processed and writes them to disk.
+     */
+    public void putAll(Map<String, Validator> validators) {
+        if (validators.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, Validator> entry : validators.entrySet()) {
+                String urlSpec = entry.getKey();
+                Validator validator = entry.getValue();
+
+                setProperty(KEY_ETAG + urlSpec, validator.getETag());
+                setProperty(KEY_LAST_MODIFIED + urlSpec, validator.getLastModified());
+            }
+        }
+
+        save();
+    }
+
+    public synchronized void clear() {
+        mValidators.clear();
+        save();
+    }
+
+    private void setProperty(String key, String value) {
+        if (value != null) {
+            mValidators.setProperty(key, value);
+        } else {
+            mValidators.remove(key);
+        }
+    }
+
+    private void save() {
+        new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                synchronized (ResponseValidatorCache.this) {
+                    File tempFile = new File(mFile.getPath() + ".tmp");
+                    OutputStream out = null;
+                    try {
+                        out = new FileOutputStream(tempFile);
+                        mValidators.store(out, null);
+                        out.close();
+                        out = null;
+
+                        if (!tempFile.renameTo(mFile)) {
+                            throw new IOException("Error renaming " + tempFile.getAbsolutePath());
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Error saving response validators", e);
+                    } finally {
+                        closeQuietly(out);
+                    }
+                }
+
+                Log.i(TAG, "Saved response validators");
+                return null;
+            }
+        }.execute();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.tragicfruit.twitcast.database;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.Xml;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.episode.EpisodeDisplay;
+import com.tragicfruit.twitcast.episode.StreamQuality;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads episodes from an RSS feed one <item> at a time, straight off the stream, so only
+ * the item being read is held in memory.
+ */
+public class RssItemReader implements Closeable {
+    private static final String TAG = "RssItemReader";
+
+    private static final String TAG_ITEM = "item";
+    private static final String TAG_TITLE = "title";
+    private static final String TAG_PUB_DATE = "pubDate";
+    private static final String TAG_SUBTITLE = "itunes:subtitle";
+    private static final String TAG_SUMMARY = "itunes:summary";
+    private static final String TAG_DURATION = "itunes:duration";
+    private static final String TAG_GUID = "guid";
+
+    private final InputStream mInputStream;
+    private final XmlPullParser mParser;
+    private final Context mContext;
+    private final StreamQuality mFeedType;
+
+    public RssItemReader(InputStream in, Context context, StreamQuality feedType) throws XmlPullParserException {
+        mInputStream = in;
+        mContext = context;
+        mFeedType = feedType;
+
+        mParser = Xml.newPullParser();
+        mParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        mParser.setInput(in, null);
+    }
+
+    /**
+     * Returns the next episode in the feed, or null once the end of the feed is reached.
+     * The guid of each item is stored as the URL for the feed's stream quality.
+     */
+    public Episode nextEpisode() throws XmlPullParserException, IOException {
+        int eventType = mParser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG && TAG_ITEM.equals(mParser.getName())) {
+                Episode episode = readItem();
+                if (episode != null) {
+                    return episode;
+                }
+            }
+            eventType = mParser.next();
+        }
+
+        return null;
+    }
+
+    private Episode readItem() throws XmlPullParserException, IOException {
+        Episode episode = new Episode();
+        String link = null;
+
+        int itemDepth = mParser.getDepth();
+        int eventType = mParser.next();
+        while (!(eventType == XmlPullParser.END_TAG && mParser.getDepth() == itemDepth)) {
+            if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of feed inside <item>");
+            }
+
+            // only read direct children of <item>
+            if (eventType == XmlPullParser.START_TAG && mParser.getDepth() == itemDepth + 1) {
+                String name = mParser.getName();
+                if (TAG_TITLE.equals(name)) {
+                    episode.setTitle(readText());
+                } else if (TAG_GUID.equals(name)) {
+                    link = readText();
+                } else if (mFeedType == StreamQuality.AUDIO) {
+                    readAudioField(episode, name);
+                }
+            }
+            eventType = mParser.next();
+        }
+
+        // the parser is left on </item>, so the next call continues from there
+        if (episode.getTitle() == null || link == null) {
+            Log.d(TAG, "Skipping incomplete feed item");
+            return null;
+        }
+
+        switch (mFeedType) {
+            case AUDIO:
+                episode.setAudioUrl(link);
+                break;
+            case VIDEO_SMALL:
+                episode.setVideoSmallUrl(link);
+                break;
+            case VIDEO_LARGE:
+                episode.setVideoLargeUrl(link);
+                break;
+            case VIDEO_HD:
+                episode.setVideoHdUrl(link);
+                break;
+        }
+
+        return episode;
+    }
+
+    private void readAudioField(Episode episode, String name) throws XmlPullParserException, IOException {
+        switch (name) {
+            case TAG_PUB_DATE:
+                episode.setPublicationDate(TWiTFetcher.parseFeedDate(readText()));
+                break;
+            case TAG_SUBTITLE:
+                episode.setSubtitle(readText());
+                break;
+            case TAG_SUMMARY:
+                episode.setShowNotes(readText());
+                break;
+            case TAG_DURATION:
+                int duration = parseDuration(readText());
+                if (duration >= 0) {
+                    episode.setDuration(duration);
+                    episode.setRunningTime(EpisodeDisplay.formatRunningTime(mContext, duration));
+                }
+                break;
+        }
+    }
+
+    private String readText() throws XmlPullParserException, IOException {
+        // nextText() leaves the parser on the matching end tag
+        return mParser.nextText().trim();
+    }
+
+    // in seconds, or -1 if unreadable
+    private int parseDuration(String runningTime) {
+        int hours = 0;
+        int minutes = 0;
+        int seconds = 0;
+
+        try {
+            String[] runningTimeComponents = runningTime.split(":");
+            if (runningTimeComponents.length == 3) {
+                seconds = Integer.parseInt(runningTimeComponents[2]);
+                minutes = Integer.parseInt(runningTimeComponents[1]);
+                hours = Integer.parseInt(runningTimeComponents[0]);
+            } else if (runningTimeComponents.length == 2) {
+                seconds = Integer.parseInt(runningTimeComponents[1]);
+                minutes = Integer.parseInt(runningTimeComponents[0]);
+            } else {
+                seconds = Integer.parseInt(runningTimeComponents[0]);
+            }
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Cannot parse running time " + runningTime);
+            return -1;
+        }
+
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+}
@@ -0,0 +1,202 @@
+package com.tragicfruit.twitcast.database;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs database writes one at a time on a single background thread, coalescing requests.
+ *
+ * A save is keyed by what it writes, and each write reads the latest data when it runs, so any
+ * number of requests for a key made before it runs become one write. Batches start a short
+ * delay after the first request, and no sooner than minInterval after the last batch, which
+ * limits how often the database syncs to disk.
+ *
+ * A write that throws is queued again, after a delay that doubles with each failure, until it
+ * has failed MAX_RETRIES times in a row.
+ */
+class SaveQueue {
+    private static final String TAG = "SaveQueue";
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    static final int MAX_RETRIES = 5;
+
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final long mDelayMillis;
+    private final long mMinIntervalMillis;
+    private final long mRetryDelayMillis;
+
+    // guarded by this
+    private final Map<String, Runnable> mPending = new LinkedHashMap<>();
+    private final Map<String, Integer> mRetries = new HashMap<>();
+    private int mPendingRequests;
+    private ScheduledFuture<?> mScheduled;
+    private long mLastBatchTime;
+    private final Stats mStats = new Stats();
+
+    /**
+     * Counts since the queue was created.
+     */
+    static class Stats {
+        int mRequests;
+        int mBatches;
+        int mWrites;
+        int mFailedWrites;
+        int mRetries;
+        long mLastLatencyMillis;
+        long mMaxLatencyMillis;
+        long mTotalLatencyMillis;
+        int mQueueDepth;
+
+        @Override
+        public String toString() {
+            return mRequests + " save requests in " + mWrites + " writes (" + mBatches + " batches, "
+                    + mFailedWrites + " failed, " + mRetries + " retried), queue depth " + mQueueDepth
+                    + ", latency last " + mLastLatencyMillis + "ms max " + mMaxLatencyMillis + "ms avg "
+                    + (mBatches == 0 ? 0 : mTotalLatencyMillis / mBatches) + "ms";
+        }
+    }
+
+    SaveQueue(long delayMillis, long minIntervalMillis) {
+        this(delayMillis, minIntervalMillis, RETRY_DELAY_MILLIS);
+    }
+
+    SaveQueue(long delayMillis, long minIntervalMillis, long retryDelayMillis) {
+        mDelayMillis = delayMillis;
+        mMinIntervalMillis = minIntervalMillis;
+        mRetryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Queues the write under the key, replacing a write for the same key that hasn't run yet.
+     */
+    synchronized void save(String key, Runnable write) {
+        mPending.put(key, write);
+        mPendingRequests++;
+        mStats.mRequests++;
+
+        if (mScheduled == null) {
+            scheduleAfter(mDelayMillis);
+        }
+    }
+
+    /**
+     * Runs pending writes now, e.g. when the app goes to the background.
+     */
+    synchronized void flush() {
+        if (mPending.isEmpty()) {
+            return;
+        }
+
+        if (mScheduled != null) {
+            mScheduled.cancel(false);
+        }
+        schedule(0);
+    }
+
+    // no sooner than minInterval after the last batch
+    private void scheduleAfter(long delayMillis) {
+        long earliest = mLastBatchTime + mMinIntervalMillis - System.currentTimeMillis();
+        schedule(Math.max(delayMillis, earliest));
+    }
+
+    private void schedule(long delayMillis) {
+        mScheduled = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runBatch();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runBatch() {
+        Map<String, Runnable> writes;
+        synchronized (this) {
+            writes = new LinkedHashMap<>(mPending);
+            mPending.clear();
+            mPendingRequests = 0;
+            mScheduled = null;
+            mLastBatchTime = System.currentTimeMillis();
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Map<String, Runnable> failedWrites = new LinkedHashMap<>();
+        for (Map.Entry<String, Runnable> entry : writes.entrySet()) {
+            try {
+                entry.getValue().run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error writing " + entry.getKey(), e);
+                failedWrites.put(entry.getKey(), entry.getValue());
+            }
+        }
+        long latency = System.currentTimeMillis() - startTime;
+
+        synchronized (this) {
+            for (String key : writes.keySet()) {
+                if (failedWrites.containsKey(key)) {
+                    retry(key, failedWrites.get(key));
+                } else {
+                    mRetries.remove(key);
+                }
+            }
+
+            mStats.mBatches++;
+            mStats.mWrites += writes.size();
+            mStats.mFailedWrites += failedWrites.size();
+            mStats.mLastLatencyMillis = latency;
+            mStats.mMaxLatencyMillis = Math.max(mStats.mMaxLatencyMillis, latency);
+            mStats.mTotalLatencyMillis += latency;
+        }
+    }
+
+    // guarded by this
+    private void retry(String key, Runnable write) {
+        Integer failures = mRetries.get(key);
+        int attempt = failures == null ? 1 : failures + 1;
+        if (attempt > MAX_RETRIES) {
+            // the data is still in memory, and written in full by the next save
+            Log.e(TAG, "Gave up writing " + key + " after " + MAX_RETRIES + " retries");
+            mRetries.remove(key);
+            return;
+        }
+        mRetries.put(key, attempt);
+        mStats.mRetries++;
+
+        // a request made since reads the same latest data, so only one is kept
+        if (!mPending.containsKey(key)) {
+            mPending.put(key, write);
+            mPendingRequests++;
+        }
+
+        long delayMillis = mRetryDelayMillis << (attempt - 1);
+        Log.w(TAG, "Retrying " + key + " in " + delayMillis + "ms");
+        if (mScheduled == null) {
+            scheduleAfter(delayMillis);
+        }
+    }
+
+    /**
+     * Returns a copy of the counts, including the number of requests waiting to be written.
+     */
+    synchronized Stats getStats() {
+        Stats stats = new Stats();
+        stats.mRequests = mStats.mRequests;
+        stats.mBatches = mStats.mBatches;
+        stats.mWrites = mStats.mWrites;
+        stats.mFailedWrites = mStats.mFailedWrites;
+        stats.mRetries = mStats.mRetries;
+        stats.mLastLatencyMillis = mStats.mLastLatencyMillis;
+        stats.mMaxLatencyMillis = mStats.mMaxLatencyMillis;
+        stats.mTotalLatencyMillis = mStats.mTotalLatencyMillis;
+        stats.mQueueDepth = mPendingRequests;
+        return stats;
+    }
+}
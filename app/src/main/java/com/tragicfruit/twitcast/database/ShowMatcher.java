@@ -0,0 +1,142 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.show.Show;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds the show an episode from an aggregate feed belongs to, by matching its title against
+ * every show title and short code at once (Aho-Corasick).
+ *
+ * The longest match wins, then the one starting earliest in the episode title. For the same
+ * text, a show title wins over a short code and an earlier show over a later one. Short codes
+ * only match as whole words, so "SN" doesn't match inside another word.
+ */
+class ShowMatcher {
+    private final Node mRoot = new Node(0);
+
+    private static class Node {
+        final int mDepth;
+        final Map<Character, Node> mChildren = new HashMap<>();
+        Node mFailure;
+
+        // the pattern ending here, and the next shorter node on the failure chain that has one
+        Pattern mPattern;
+        Node mOutput;
+
+        Node(int depth) {
+            mDepth = depth;
+        }
+    }
+
+    private static class Pattern {
+        final Show mShow;
+        final boolean mWholeWord;
+
+        Pattern(Show show, boolean wholeWord) {
+            mShow = show;
+            mWholeWord = wholeWord;
+        }
+    }
+
+    ShowMatcher(List<Show> shows) {
+        for (Show show : shows) {
+            add(show.getTitle(), new Pattern(show, false));
+        }
+        for (Show show : shows) {
+            add(show.getShortCode(), new Pattern(show, true));
+        }
+        buildLinks();
+    }
+
+    private void add(String text, Pattern pattern) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        Node node = mRoot;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Node child = node.mChildren.get(c);
+            if (child == null) {
+                child = new Node(node.mDepth + 1);
+                node.mChildren.put(c, child);
+            }
+            node = child;
+        }
+
+        // keep the first show for the same text
+        if (node.mPattern == null) {
+            node.mPattern = pattern;
+        }
+    }
+
+    private void buildLinks() {
+        Queue<Node> queue = new ArrayDeque<>();
+        mRoot.mFailure = mRoot;
+        for (Node child : mRoot.mChildren.values()) {
+            child.mFailure = mRoot;
+            queue.add(child);
+        }
+
+        // breadth first, so every shorter node is linked before it's needed
+        while (!queue.isEmpty()) {
+            Node node = queue.remove();
+            for (Map.Entry<Character, Node> entry : node.mChildren.entrySet()) {
+                Node child = entry.getValue();
+                child.mFailure = next(node.mFailure, entry.getKey());
+                child.mOutput = child.mFailure.mPattern != null ? child.mFailure : child.mFailure.mOutput;
+                queue.add(child);
+            }
+        }
+    }
+
+    private Node next(Node node, char c) {
+        while (true) {
+            Node child = node.mChildren.get(c);
+            if (child != null) {
+                return child;
+            }
+            if (node == mRoot) {
+                return mRoot;
+            }
+            node = node.mFailure;
+        }
+    }
+
+    /**
+     * Returns the show matching the title, or null if none does.
+     */
+    Show match(String title) {
+        Pattern best = null;
+        int bestLength = 0;
+
+        Node node = mRoot;
+        for (int end = 1; end <= title.length(); end++) {
+            node = next(node, title.charAt(end - 1));
+
+            // patterns ending here, longest first
+            Node output = node.mPattern != null ? node : node.mOutput;
+            while (output != null && output.mDepth > bestLength) {
+                Pattern pattern = output.mPattern;
+                if (!pattern.mWholeWord || isWholeWord(title, end - output.mDepth, end)) {
+                    best = pattern;
+                    bestLength = output.mDepth;
+                    break;
+                }
+                output = output.mOutput;
+            }
+        }
+
+        return best == null ? null : best.mShow;
+    }
+
+    private static boolean isWholeWord(String text, int start, int end) {
+        return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+                && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+    }
+}
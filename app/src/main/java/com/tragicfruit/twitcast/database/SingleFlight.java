@@ -0,0 +1,91 @@
+package com.tragicfruit.twitcast.database;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces concurrent calls with equal keys, so the work is done once and every caller waits
+ * for and shares its result. Nothing is cached once the call completes.
+ *
+ * The work runs on the given executor rather than on the first caller's thread, so a caller
+ * that is interrupted stops waiting without failing the call for the others.
+ */
+public class SingleFlight<V> {
+    private final Executor mExecutor;
+    private final Map<Object, FutureTask<V>> mInFlight = new HashMap<>();
+    private final AtomicInteger mCallerCount = new AtomicInteger();
+
+    public SingleFlight(Executor executor) {
+        mExecutor = executor;
+    }
+
+    public V execute(final Object key, Callable<V> callable) throws Exception {
+        FutureTask<V> task;
+        boolean leader = false;
+        synchronized (mInFlight) {
+            task = mInFlight.get(key);
+            if (task == null) {
+                // leaves the map before waiters wake, so a call after it returns starts afresh
+                task = new FutureTask<V>(callable) {
+                    @Override
+                    protected void set(V v) {
+                        remove(key);
+                        super.set(v);
+                    }
+
+                    @Override
+                    protected void setException(Throwable t) {
+                        remove(key);
+                        super.setException(t);
+                    }
+                };
+                mInFlight.put(key, task);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            mExecutor.execute(task);
+        }
+
+        mCallerCount.incrementAndGet();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            mCallerCount.decrementAndGet();
+        }
+    }
+
+    private void remove(Object key) {
+        synchronized (mInFlight) {
+            mInFlight.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of calls currently in flight.
+     */
+    public int getInFlightCount() {
+        synchronized (mInFlight) {
+            return mInFlight.size();
+        }
+    }
+
+    /**
+     * Returns the number of callers waiting on calls in flight.
+     */
+    public int getCallerCount() {
+        return mCallerCount.get();
+    }
+}
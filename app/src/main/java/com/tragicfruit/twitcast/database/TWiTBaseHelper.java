@@ -13,39 +13,145 @@ import com.tragicfruit.twitcast.utils.QueryPreferences;
  * Created by Jeremy on 5/03/2016.
  */
 public class TWiTBaseHelper extends SQLiteOpenHelper {
-    private static final int VERSION = 5;
+    private static final int VERSION = 8;
     private static final String DATABASE_NAME = "twitBase.db";
+    private static final String EPISODE_SHOW_DATE_INDEX = "episodes_show_date";
+    private static final String EPISODE_DATE_INDEX = "episodes_date";
 
     private Context mContext;
 
     public TWiTBaseHelper(Context context) {
         super(context, DATABASE_NAME, null, VERSION);
         mContext = context;
+
+        // lets the UI read while a refresh saves in the background
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL("create table " + ShowTable.NAME + "(" +
+        createShowTable(db, ShowTable.NAME);
+        createEpisodeTable(db, EpisodeTable.NAME);
+        createIndexes(db);
+    }
+
+    private static void createShowTable(SQLiteDatabase db, String name) {
+        db.execSQL("create table " + name + "(" +
+                " _id integer primary key autoincrement, " +
+                ShowTable.Cols.TITLE + " text, " +
+                ShowTable.Cols.SHORT_CODE + " text, " +
+                ShowTable.Cols.COVER_ART_URL + " text, " +
+                ShowTable.Cols.COVER_ART_URL_SMALL + " text, " +
+                ShowTable.Cols.COVER_ART_LOCAL_PATH + " text, " +
+                ShowTable.Cols.ID + " integer not null unique, " +
+                ShowTable.Cols.DESCRIPTION + " text, " +
+                ShowTable.Cols.VIDEO_HD_FEED + " text, " +
+                ShowTable.Cols.VIDEO_LARGE_FEED + " text, " +
+                ShowTable.Cols.VIDEO_SMALL_FEED + " text, " +
+                ShowTable.Cols.AUDIO_FEED + " text, " +
+                ShowTable.Cols.LOADED_ALL_EPISODES + " integer not null default 0" +
+                ")"
+        );
+    }
+
+    // episodes are keyed by title, as the feeds have no stable guid
+    private static void createEpisodeTable(SQLiteDatabase db, String name) {
+        db.execSQL("create table " + name + "(" +
                 " _id integer primary key autoincrement, " +
+                EpisodeTable.Cols.TITLE + " text not null unique, " +
+                EpisodeTable.Cols.PUBLICATION_DATE + " integer not null, " +
+                EpisodeTable.Cols.SUBTITLE + " text, " +
+                EpisodeTable.Cols.SHOW_NOTES + " text, " +
+                EpisodeTable.Cols.VIDEO_HD_URL + " text, " +
+                EpisodeTable.Cols.VIDEO_LARGE_URL + " text, " +
+                EpisodeTable.Cols.VIDEO_SMALL_URL + " text, " +
+                EpisodeTable.Cols.AUDIO_URL + " text, " +
+                EpisodeTable.Cols.RUNNING_TIME + " text, " +
+                EpisodeTable.Cols.SHOW_ID + " integer, " +
+                EpisodeTable.Cols.DURATION + " integer, " +
+                "FOREIGN KEY(" + EpisodeTable.Cols.SHOW_ID +  ") REFERENCES " +
+                ShowTable.NAME + "(" + ShowTable.Cols.ID + ")" +
+                ")"
+        );
+    }
+
+    // if not exists, as upgrades from before version 6 have them made by the migration
+    private static void createIndexes(SQLiteDatabase db) {
+        db.execSQL("create index if not exists " + EPISODE_SHOW_DATE_INDEX + " on " + EpisodeTable.NAME + "(" +
+                EpisodeTable.Cols.SHOW_ID + ", " +
+                EpisodeTable.Cols.PUBLICATION_DATE + " desc" +
+                ")"
+        );
+
+        // pages through every show's episodes in list order
+        db.execSQL("create index if not exists " + EPISODE_DATE_INDEX + " on " + EpisodeTable.NAME + "(" +
+                EpisodeTable.Cols.PUBLICATION_DATE + " desc, " +
+                EpisodeTable.Cols.TITLE +
+                ")"
+        );
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // each step applies to every version before it, so any old version reaches the latest
+        if (oldVersion < 4) {
+            db.execSQL("alter table " + ShowTable.NAME + " add " + ShowTable.Cols.COVER_ART_URL_SMALL);
+        }
+
+        if (oldVersion < 5) {
+            QueryPreferences.setStreamSource(mContext, Constants.DEFAULT_SOURCE);
+        }
+
+        if (oldVersion < 6) {
+            migrateToTypedSchema(db);
+        }
+
+        if (oldVersion < 7) {
+            createIndexes(db);
+        }
+
+        // tables migrated above are made with it
+        if (oldVersion >= 6 && oldVersion < 8) {
+            db.execSQL("alter table " + EpisodeTable.NAME + " add " + EpisodeTable.Cols.DURATION + " integer");
+        }
+
+        QueryPreferences.setForceRefetchShows(mContext, true);
+    }
+
+    /**
+     * Copies the untyped version 5 tables into typed ones. Rows with a duplicate key keep the
+     * last copy, as loading them did.
+     */
+    private static void migrateToTypedSchema(SQLiteDatabase db) {
+        String showTable = ShowTable.NAME + "_new";
+        String episodeTable = EpisodeTable.NAME + "_new";
+
+        createShowTable(db, showTable);
+        createEpisodeTable(db, episodeTable);
+
+        db.execSQL("insert or replace into " + showTable + " select " +
+                "_id, " +
                 ShowTable.Cols.TITLE + ", " +
                 ShowTable.Cols.SHORT_CODE + ", " +
                 ShowTable.Cols.COVER_ART_URL + ", " +
                 ShowTable.Cols.COVER_ART_URL_SMALL + ", " +
                 ShowTable.Cols.COVER_ART_LOCAL_PATH + ", " +
-                ShowTable.Cols.ID + ", " +
+                "cast(" + ShowTable.Cols.ID + " as integer), " +
                 ShowTable.Cols.DESCRIPTION + ", " +
                 ShowTable.Cols.VIDEO_HD_FEED + ", " +
                 ShowTable.Cols.VIDEO_LARGE_FEED + ", " +
                 ShowTable.Cols.VIDEO_SMALL_FEED + ", " +
                 ShowTable.Cols.AUDIO_FEED + ", " +
-                ShowTable.Cols.LOADED_ALL_EPISODES +
-                ")"
+                "ifnull(cast(" + ShowTable.Cols.LOADED_ALL_EPISODES + " as integer), 0)" +
+                " from " + ShowTable.NAME +
+                " where " + ShowTable.Cols.ID + " is not null" +
+                " order by _id"
         );
 
-        db.execSQL("create table " + EpisodeTable.NAME + "(" +
-                " _id integer primary key autoincrement, " +
+        db.execSQL("insert or replace into " + episodeTable + " select " +
+                "_id, " +
                 EpisodeTable.Cols.TITLE + ", " +
-                EpisodeTable.Cols.PUBLICATION_DATE + ", " +
+                "cast(" + EpisodeTable.Cols.PUBLICATION_DATE + " as integer), " +
                 EpisodeTable.Cols.SUBTITLE + ", " +
                 EpisodeTable.Cols.SHOW_NOTES + ", " +
                 EpisodeTable.Cols.VIDEO_HD_URL + ", " +
@@ -53,23 +159,18 @@ public class TWiTBaseHelper extends SQLiteOpenHelper {
                 EpisodeTable.Cols.VIDEO_SMALL_URL + ", " +
                 EpisodeTable.Cols.AUDIO_URL + ", " +
                 EpisodeTable.Cols.RUNNING_TIME + ", " +
-                EpisodeTable.Cols.SHOW_ID + ", " +
-                "FOREIGN KEY(" + EpisodeTable.Cols.SHOW_ID +  ") REFERENCES " + ShowTable.NAME + "(_id)" +
-                ")"
+                "cast(" + EpisodeTable.Cols.SHOW_ID + " as integer), " +
+                "null" + // duration
+                " from " + EpisodeTable.NAME +
+                " where " + EpisodeTable.Cols.TITLE + " is not null" +
+                " and " + EpisodeTable.Cols.PUBLICATION_DATE + " is not null" +
+                " order by _id"
         );
-    }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (newVersion == 4) {
-            db.execSQL("alter table " + ShowTable.NAME + " add " + ShowTable.Cols.COVER_ART_URL_SMALL);
-            newVersion++;
-        }
-
-        if (newVersion == 5) {
-            QueryPreferences.setStreamSource(mContext, Constants.DEFAULT_SOURCE);
-        }
-
-        QueryPreferences.setForceRefetchShows(mContext, true);
+        db.execSQL("drop table " + EpisodeTable.NAME);
+        db.execSQL("drop table " + ShowTable.NAME);
+        db.execSQL("alter table " + showTable + " rename to " + ShowTable.NAME);
+        db.execSQL("alter table " + episodeTable + " rename to " + EpisodeTable.NAME);
+        createIndexes(db);
     }
 }
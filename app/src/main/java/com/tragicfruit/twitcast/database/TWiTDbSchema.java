@@ -37,6 +37,7 @@ public class TWiTDbSchema {
             public static final String AUDIO_URL = "audio_url";
             public static final String RUNNING_TIME = "running_time";
             public static final String SHOW_ID = "show_id";
+            public static final String DURATION = "duration";
         }
     }
 }
@@ -4,46 +4,43 @@ import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
 
-import com.tragicfruit.twitcast.R;
 import com.tragicfruit.twitcast.constants.Constants;
 import com.tragicfruit.twitcast.episode.Episode;
 import com.tragicfruit.twitcast.episode.StreamQuality;
 import com.tragicfruit.twitcast.show.Show;
 import com.tragicfruit.twitcast.stream.UpcomingEpisode;
+import com.tragicfruit.twitcast.utils.FastDateParser;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.StringReader;
-import java.io.Writer;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by Jeremy on 24/02/2016.
@@ -53,35 +50,87 @@ public class TWiTFetcher {
     private static final Uri TWIT_API_ENDPOINT = Uri.parse("https://twit.tv/api/v1.0");
     private static final Uri GOOGLE_CALENDAR_ENDPOINT = Uri.parse("https://www.googleapis.com/calendar/v3/calendars");
 
+    private static final String RSS_DATE_FORMAT = "EEE, d MMM yyyy k:m:s ZZZ";
+    private static final String CALENDAR_DATE_FORMAT = "yyyy-MM-dd'T'H:m:ssZZZZZ";
+
+    // audio + three video qualities, for two overlapping refreshes so the second can join the
+    // first one's downloads instead of queueing behind them
+    private static final int FEED_THREAD_COUNT = 8;
+    private static final int FEED_TIMEOUT_SECONDS = 30;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 20000;
+
+    // order of the feeds passed to fetchEpisodes, the audio feed first
+    private static final StreamQuality[] FEED_TYPES = {
+            StreamQuality.AUDIO,
+            StreamQuality.VIDEO_SMALL,
+            StreamQuality.VIDEO_LARGE,
+            StreamQuality.VIDEO_HD
+    };
+
+    private static final ExecutorService sFeedExecutor = Executors.newFixedThreadPool(FEED_THREAD_COUNT);
+    private static HttpTransport sTransport;
+
+    // identity marks a feed that was requested conditionally and has not changed
+    private static final List<Episode> NOT_MODIFIED = Collections.unmodifiableList(new ArrayList<Episode>());
+
+    // feeds being downloaded by any fetcher, so overlapping refreshes share one request
+    // on threads of their own, so cancelling one refresh doesn't fail the others sharing a feed
+    private static final SingleFlight<FeedResult> sFeedFlights =
+            new SingleFlight<>(Executors.newCachedThreadPool());
+
     private TWiTLab mDatabase;
     private Context mContext;
+    private ResponseValidatorCache mValidatorCache;
+    private Map<String, ResponseValidatorCache.Validator> mPendingValidators;
+
+    private static class FeedResult {
+        private final List<Episode> mEpisodes;
+        private final ResponseValidatorCache.Validator mValidator;
+
+        FeedResult(List<Episode> episodes, ResponseValidatorCache.Validator validator) {
+            mEpisodes = episodes;
+            mValidator = validator;
+        }
+    }
 
     public TWiTFetcher(Context context) {
         mContext = context;
         mDatabase = TWiTLab.get(context);
+        mValidatorCache = ResponseValidatorCache.get(context);
+        mPendingValidators = new ConcurrentHashMap<>();
     }
 
-    private byte[] getUrlBytes(String urlSpec) throws IOException {
-        URL url = new URL(urlSpec);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    /**
+     * Replaces the transport used by every fetcher, e.g. with one that records requests.
+     */
+    public static synchronized void setTransport(HttpTransport transport) {
+        sTransport = transport;
+    }
 
-        try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            InputStream in = connection.getInputStream();
+    public static synchronized HttpTransport getTransport() {
+        if (sTransport == null) {
+            sTransport = new UrlConnectionTransport(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+        }
 
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                throw new IOException(connection.getResponseMessage() + ": with " + urlSpec);
-            }
+        return sTransport;
+    }
 
-            int bytesRead;
-            byte[] buffer = new byte[1024];
-            while ((bytesRead = in.read(buffer)) > 0) {
-                out.write(buffer, 0, bytesRead);
+    // the number of feed reads waiting on a download, for tests
+    static int getFeedCallerCount() {
+        return sFeedFlights.getCallerCount();
+    }
+
+    private byte[] getUrlBytes(String urlSpec) throws IOException {
+        HttpResponse response = getTransport().get(urlSpec, Collections.<String, String>emptyMap());
+        try {
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(response.getMessage() + ": with " + urlSpec);
             }
-            out.close();
-            return out.toByteArray();
+
+            return response.readBytes();
         } finally {
-            connection.disconnect();
+            response.close();
         }
     }
 
@@ -89,95 +138,56 @@ public class TWiTFetcher {
         return new String(getUrlBytes(urlSpec));
     }
 
-    public File getCoverArt(Show show) throws IOException {
-        URL url = new URL(show.getCoverArtUrl());
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    /**
+     * Returns null if the request was conditional and the response has not been modified.
+     */
+    private byte[] getApiUrlBytes(String urlSpec, boolean conditional) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("app-id", Constants.TWIT_API_ID);
+        headers.put("app-key", Constants.TWIT_API_KEY);
+        if (conditional) {
+            mValidatorCache.addConditionalHeaders(headers, urlSpec);
+        }
 
-        Writer writer = null;
-        File file;
+        HttpResponse response = getTransport().get(urlSpec, headers);
         try {
-            InputStream in = connection.getInputStream();
-
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                throw new IOException(connection.getResponseMessage() + ": with " + url);
-            }
-
-            File coverArtFolder = new File(mContext.getFilesDir() + "/" + Constants.COVER_ART_FOLDER);
-            if (!coverArtFolder.exists()) {
-                if (!coverArtFolder.mkdir()) {
-                    throw new IOException("Error creating cover art folder");
-                }
+            if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Log.d(TAG, "Not modified: " + urlSpec);
+                return null;
             }
 
-            file = new File(mContext.getFilesDir() + "/" + Constants.COVER_ART_FOLDER, getImageFileName(Uri.parse(show.getCoverArtUrl())));
-
-            OutputStream out = new FileOutputStream(file);
-            writer = new OutputStreamWriter(out);
-
-            int read;
-            byte[] bytes = new byte[1024];
-            while ((read = in.read(bytes)) != -1) {
-                out.write(bytes, 0, read);
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(response.getMessage() + ": with " + urlSpec);
             }
 
-            Log.i(TAG, "File saved to: " + file.getAbsolutePath());
-
-            return file;
+            byte[] bytes = response.readBytes();
+            addPendingValidator(urlSpec, response);
+            return bytes;
         } finally {
-            if (writer != null) {
-                writer.close();
-            }
+            response.close();
         }
     }
 
-    private String getImageFileName(Uri uri) {
-        String url = uri.toString();
-
-        int startIndex = url.lastIndexOf('/');
-        int endIndex = url.lastIndexOf('?');
-        return url.substring(startIndex + 1, endIndex);
-    }
-
-    private byte[] getApiUrlBytes(String urlSpec) throws IOException {
-        URL url = new URL(urlSpec);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestProperty("app-id", Constants.TWIT_API_ID);
-        connection.setRequestProperty("app-key", Constants.TWIT_API_KEY);
-
-        try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            InputStream in = connection.getInputStream();
-
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                throw new IOException(connection.getResponseMessage() + ": with " + urlSpec);
-            }
-
-            int bytesRead;
-            byte[] buffer = new byte[1024];
-            while ((bytesRead = in.read(buffer)) > 0) {
-                out.write(buffer, 0, bytesRead);
-            }
-            out.close();
-            return out.toByteArray();
-        } finally {
-            connection.disconnect();
+    private void addPendingValidator(String urlSpec, HttpResponse response) {
+        ResponseValidatorCache.Validator validator = ResponseValidatorCache.getValidator(response);
+        if (validator != null) {
+            mPendingValidators.put(urlSpec, validator);
         }
     }
 
-    private String getApiUrlString(String urlSpec) throws IOException {
-        return new String(getApiUrlBytes(urlSpec));
+    /**
+     * Stores the validators of every response fetched by this fetcher, so the next refresh
+     * can be made conditionally. Call once the fetched data has been applied to TWiTLab.
+     */
+    public void commitValidators() {
+        mValidatorCache.putAll(mPendingValidators);
+        mPendingValidators.clear();
     }
 
     public List<UpcomingEpisode> fetchUpcomingEpisodes() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'H:m:ssZZZZZ", Locale.US);
-        String timeNow = dateFormat.format(new Date());
-
-        Calendar c = Calendar.getInstance();
-        c.setTime(new Date());
-        c.add(Calendar.DATE, 2); // advance date 2 days
-        Date twoDaysTime = c.getTime();
-
-        String timeInTwoDays = dateFormat.format(twoDaysTime);
+        long now = System.currentTimeMillis();
+        String timeNow = FastDateParser.formatIso8601(now);
+        String timeInTwoDays = FastDateParser.formatIso8601(now + TimeUnit.DAYS.toMillis(2));
 
         Uri uri = GOOGLE_CALENDAR_ENDPOINT.buildUpon()
                 .appendPath(Constants.GOOGLE_CALENDAR_ID)
@@ -215,7 +225,7 @@ public class TWiTFetcher {
 
             JSONObject start = item.getJSONObject("start");
             String startDateString = start.getString("dateTime");
-            episode.setAiringDate(parseDate(startDateString, "yyyy-MM-dd'T'H:m:ssZZZZZ"));
+            episode.setAiringDate(parseCalendarDate(startDateString));
 
             Log.d(TAG, "Upcoming show: " +  episode.getTitle() + " - " + episode.getAiringDate());
             upcomingEpisodeList.add(episode);
@@ -224,15 +234,26 @@ public class TWiTFetcher {
         return upcomingEpisodeList;
     }
 
-    public List<Show> fetchShows() {
+    /**
+     * Returns the active shows, an empty list if they haven't changed since the last committed
+     * fetch, or null if they couldn't be fetched. Only asks for changes if conditional and there
+     * are shows to fall back on.
+     */
+    public List<Show> fetchShows(boolean conditional) {
         try {
             Uri uri = TWIT_API_ENDPOINT.buildUpon()
                     .appendPath("shows")
                     .appendQueryParameter("shows_active", "1")
                     .build();
 
-            String jsonBody = getApiUrlString(uri.toString());
-            JSONObject jsonObject = new JSONObject(jsonBody);
+            byte[] jsonBytes = getApiUrlBytes(uri.toString(),
+                    conditional && !mDatabase.getShows().isEmpty());
+            if (jsonBytes == null) {
+                Log.d(TAG, "Shows not modified");
+                return new ArrayList<>();
+            }
+
+            JSONObject jsonObject = new JSONObject(new String(jsonBytes));
             return parseShows(jsonObject);
 
         } catch (JSONException je) {
@@ -313,126 +334,239 @@ public class TWiTFetcher {
         return fetchEpisodes(null);
     }
 
+    /**
+     * Returns the episodes in the show's feeds (or the Brickhouse feeds if show is null), an
+     * empty list if none of the feeds have changed since the last committed fetch, or null if
+     * the audio feed could not be fetched.
+     *
+     * Once episodes have been loaded, refreshes are incremental: each feed is read newest first
+     * only until it reaches an episode TWiTLab already has in full. That episode is kept in the
+     * result so callers can still tell the feed overlaps the local episodes.
+     */
     public List<Episode> fetchEpisodes(Show show) throws IOException {
-        List<Episode> episodeList;
+        String[] feedUrls;
         if (show == null) {
-            episodeList = getEpisodeListFromFeed(Constants.BRICKHOUSE_AUDIO_FEED);
-            addVideoFeed(episodeList, Constants.BRICKHOUSE_VIDEO_SMALL_FEED, StreamQuality.VIDEO_SMALL);
-            addVideoFeed(episodeList, Constants.BRICKHOUSE_VIDEO_LARGE_FEED, StreamQuality.VIDEO_LARGE);
-            addVideoFeed(episodeList, Constants.BRICKHOUSE_VIDEO_HD_FEED, StreamQuality.VIDEO_HD);
+            feedUrls = new String[] {
+                    Constants.BRICKHOUSE_AUDIO_FEED,
+                    Constants.BRICKHOUSE_VIDEO_SMALL_FEED,
+                    Constants.BRICKHOUSE_VIDEO_LARGE_FEED,
+                    Constants.BRICKHOUSE_VIDEO_HD_FEED
+            };
         } else {
-            episodeList = getEpisodeListFromFeed(show.getAudioFeed());
-            addVideoFeed(episodeList, show.getVideoSmallFeed(), StreamQuality.VIDEO_SMALL);
-            addVideoFeed(episodeList, show.getVideoLargeFeed(), StreamQuality.VIDEO_LARGE);
-            addVideoFeed(episodeList, show.getVideoHdFeed(), StreamQuality.VIDEO_HD);
+            feedUrls = new String[] {
+                    show.getAudioFeed(),
+                    show.getVideoSmallFeed(),
+                    show.getVideoLargeFeed(),
+                    show.getVideoHdFeed()
+            };
+        }
+
+        // only ask for changes if the episodes from the last fetch are still around
+        boolean incremental = show == null ? !mDatabase.getEpisodes().isEmpty() : show.hasLoadedAllEpisodes();
+
+        List<Set<String>> knownUrls = new ArrayList<>();
+        for (StreamQuality feedType : FEED_TYPES) {
+            knownUrls.add(incremental
+                    ? mDatabase.getCompleteEpisodeUrls(show, feedType)
+                    : Collections.<String>emptySet());
         }
-        return episodeList;
-    }
 
-    private void addVideoFeed(List<Episode> episodeList, String feedUrl, StreamQuality feedType) throws IOException {
+        List<Future<List<Episode>>> futures = new ArrayList<>();
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            String feed = getUrlString(feedUrl);
-            Document document = builder.parse(new InputSource(new StringReader(feed)));
-
-            NodeList episodeNodeList = document.getElementsByTagName("item");
-            int episodeListStartingIndex = findFirstMatchingIndex(episodeList, (Element) episodeNodeList.item(0));
-
-            // i is index for video feed, j is index for episode list (built from audio feed)
-            for (int i = 0, j = episodeListStartingIndex; i < episodeNodeList.getLength() && j < episodeList.size(); i++, j++) {
-                Episode episode = episodeList.get(j);
-
-                Element episodeElement = (Element) episodeNodeList.item(i);
-                String title = episodeElement.getElementsByTagName("title").item(0).getTextContent();
-                if (!title.equals(episode.getTitle())) {
-                    i--; // stay on video feed episode and find matching one from audio feed
-                    continue;
-                }
+            // issue all four requests at once, each feed is parsed as soon as it arrives
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(FEED_TIMEOUT_SECONDS);
+            for (int i = 0; i < FEED_TYPES.length; i++) {
+                submitFeed(futures, feedUrls[i], FEED_TYPES[i], incremental, knownUrls.get(i));
+            }
 
-                String link = episodeElement.getElementsByTagName("guid").item(0).getTextContent();
-//                NamedNodeMap attributes = episodeElement.getElementsByTagName("media:content").item(0).getAttributes();
-//                String link = attributes.getNamedItem("url").getTextContent();
-
-                switch (feedType) {
-                    case VIDEO_SMALL:
-                        episode.setVideoSmallUrl(link);
-                        break;
-                    case VIDEO_LARGE:
-                        episode.setVideoLargeUrl(link);
-                        break;
-                    case VIDEO_HD:
-                        episode.setVideoHdUrl(link);
-                        break;
+            List<List<Episode>> feeds = new ArrayList<>();
+            boolean allNotModified = true;
+            for (int i = 0; i < FEED_TYPES.length; i++) {
+                List<Episode> feed = getFeedResult(futures.get(i), FEED_TYPES[i], deadline);
+                feeds.add(feed);
+                allNotModified &= feed == NOT_MODIFIED;
+            }
+
+            if (allNotModified) {
+                Log.d(TAG, "No new episodes");
+                return new ArrayList<>();
+            }
+
+            // something was published, so unchanged feeds are needed in full to merge against
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(FEED_TIMEOUT_SECONDS);
+            for (int i = 0; i < FEED_TYPES.length; i++) {
+                if (feeds.get(i) == NOT_MODIFIED) {
+                    Future<List<Episode>> future =
+                            submitFeed(futures, feedUrls[i], FEED_TYPES[i], false, knownUrls.get(i));
+                    feeds.set(i, getFeedResult(future, FEED_TYPES[i], deadline));
                 }
             }
 
-            Log.d(TAG, "Fetched video feed " + feedType.toString());
-        } catch (ParserConfigurationException | SAXException e) {
-            Log.e(TAG, "Error parsing XML", e);
-        }
-    }
+            List<Episode> episodeList = feeds.get(0);
+            if (episodeList == null) {
+                return null;
+            }
 
-    private int findFirstMatchingIndex(List<Episode> episodeList, Element firstXmlItem) {
-        String firstXmlItemTitle = firstXmlItem.getElementsByTagName("title").item(0).getTextContent();
+            VideoFeedMerger merger = new VideoFeedMerger(episodeList);
+            for (int i = 1; i < FEED_TYPES.length; i++) {
+                addVideoFeed(merger, feeds.get(i), FEED_TYPES[i]);
+            }
 
-        for (int i = 0; i < episodeList.size(); i++) {
-            String episodeTitle = episodeList.get(i).getTitle();
-            if (firstXmlItemTitle.equals(episodeTitle)) {
-                return i;
+            Log.d(TAG, "Transport stats\n" + getTransport().getStats());
+            return episodeList;
+        } catch (InterruptedException e) {
+            // calling task was cancelled
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fetching episodes cancelled");
+        } finally {
+            for (Future<List<Episode>> future : futures) {
+                future.cancel(true);
             }
         }
+    }
 
-        return -1;
+    private Future<List<Episode>> submitFeed(List<Future<List<Episode>>> futures, final String feedUrl,
+                                             final StreamQuality feedType, final boolean conditional,
+                                             final Set<String> knownUrls) {
+        Future<List<Episode>> future = sFeedExecutor.submit(new Callable<List<Episode>>() {
+            @Override
+            public List<Episode> call() throws Exception {
+                return getEpisodeListFromFeed(feedUrl, feedType, conditional, knownUrls);
+            }
+        });
+        futures.add(future);
+        return future;
     }
 
-    private List<Episode> getEpisodeListFromFeed(String feedUrl) {
+    private List<Episode> getFeedResult(Future<List<Episode>> future, StreamQuality feedType, long deadline)
+            throws InterruptedException {
         try {
-            List<Episode> episodeList = new ArrayList<>();
+            long timeout = Math.max(0, deadline - System.nanoTime());
+            return future.get(timeout, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error fetching feed " + feedType.toString(), e.getCause());
+            return null;
+        } catch (TimeoutException e) {
+            Log.e(TAG, "Timed out fetching feed " + feedType.toString());
+            future.cancel(true);
+            return null;
+        }
+    }
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            String feed = getUrlString(feedUrl);
-            Document document = builder.parse(new InputSource(new StringReader(feed)));
+    private void addVideoFeed(VideoFeedMerger merger, List<Episode> videoList, StreamQuality feedType) {
+        if (videoList == null) {
+            return;
+        }
 
-            NodeList episodeNodeList = document.getElementsByTagName("item");
-            for (int i = 0; i < episodeNodeList.getLength(); i++) {
-                Episode episode = new Episode();
+        int unmatched = merger.merge(videoList, feedType);
+        if (unmatched > 0) {
+            Log.w(TAG, "Merged video feed " + feedType.toString() + ": " + unmatched + " of "
+                    + videoList.size() + " items unmatched");
+        } else {
+            Log.d(TAG, "Merged video feed " + feedType.toString());
+        }
+    }
 
-                Element episodeElement = (Element) episodeNodeList.item(i);
-                String title = episodeElement.getElementsByTagName("title").item(0).getTextContent();
-                episode.setTitle(title);
+    /**
+     * Returns the feed's episodes, sharing the download with any other fetcher already reading
+     * the same feed. Each caller gets its own copies, as merging and saving them changes them.
+     */
+    private List<Episode> getEpisodeListFromFeed(final String feedUrl, final StreamQuality feedType,
+                                                 final boolean conditional, final Set<String> knownUrls)
+            throws Exception {
+        // a conditional request can come back not modified, and one that stops early at a known
+        // episode can be missing newer ones another caller knows nothing of, so neither can stand
+        // in for a different request
+        List<Object> key = Arrays.asList(feedUrl, conditional, knownUrls);
+        FeedResult result = sFeedFlights.execute(key, new Callable<FeedResult>() {
+            @Override
+            public FeedResult call() throws Exception {
+                return readFeed(feedUrl, feedType, conditional, knownUrls);
+            }
+        });
 
-                String pubDate = episodeElement.getElementsByTagName("pubDate").item(0).getTextContent();
-                episode.setPublicationDate(parseDate(pubDate, "EEE, d MMM yyyy k:m:s ZZZ"));
+        if (result.mValidator != null) {
+            mPendingValidators.put(feedUrl, result.mValidator);
+        }
 
-                String subtitle = episodeElement.getElementsByTagName("itunes:subtitle").item(0).getTextContent();
-                episode.setSubtitle(subtitle);
+        if (result.mEpisodes == NOT_MODIFIED) {
+            return NOT_MODIFIED;
+        }
+        List<Episode> episodeList = new ArrayList<>(result.mEpisodes.size());
+        for (Episode episode : result.mEpisodes) {
+            episodeList.add(episode.copy());
+        }
+        return episodeList;
+    }
 
-                String showNotes = episodeElement.getElementsByTagName("itunes:summary").item(0).getTextContent();
-                episode.setShowNotes(showNotes);
+    /**
+     * Reads the feed until its end, or until it reaches an item whose URL is in knownUrls.
+     */
+    private FeedResult readFeed(String feedUrl, StreamQuality feedType, boolean conditional,
+                                Set<String> knownUrls)
+            throws IOException, XmlPullParserException {
+        Map<String, String> headers = new HashMap<>();
+        if (conditional) {
+            mValidatorCache.addConditionalHeaders(headers, feedUrl);
+        }
 
-                String duration = episodeElement.getElementsByTagName("itunes:duration").item(0).getTextContent();
-                episode.setRunningTime(parseRunningTime(duration));
+        HttpResponse response = getTransport().get(feedUrl, headers);
+        try {
+            if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Log.d(TAG, "Feed not modified " + feedType.toString());
+                return new FeedResult(NOT_MODIFIED, null);
+            }
 
-                String audioLink = episodeElement.getElementsByTagName("guid").item(0).getTextContent();
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(response.getMessage() + ": with " + feedUrl);
+            }
 
-                episode.setAudioUrl(audioLink);
+            // parse straight off the connection rather than buffering the whole feed
+            InputStream in = new BufferedInputStream(response.getBody(), BufferPool.BUFFER_SIZE);
+            RssItemReader reader = new RssItemReader(in, mContext, feedType);
 
+            List<Episode> episodeList = new ArrayList<>();
+            Episode episode;
+            while ((episode = reader.nextEpisode()) != null) {
                 episodeList.add(episode);
+
+                if (knownUrls.contains(episode.getUrl(feedType))) {
+                    // everything older is already stored, drop the rest of the response
+                    Log.d(TAG, "Reached known episode in feed " + feedType.toString()
+                            + " after " + episodeList.size() + " items");
+                    break;
+                }
             }
 
-            Log.d(TAG, "Fetched audio feeds");
+            Log.d(TAG, "Fetched feed " + feedType.toString());
 
-            return episodeList;
+            return new FeedResult(episodeList, ResponseValidatorCache.getValidator(response));
+        } finally {
+            response.close();
+        }
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to fetch episodes", e);
-            return null;
+    /**
+     * Parses an RSS pubDate, falling back to SimpleDateFormat for time zone names
+     * outside RFC 822.
+     */
+    static Date parseFeedDate(String dateString) {
+        try {
+            return new Date(FastDateParser.parseRfc822(dateString));
+        } catch (ParseException pe) {
+            return parseDate(dateString, RSS_DATE_FORMAT);
         }
     }
 
-    private Date parseDate(String dateString, String format) {
+    static Date parseCalendarDate(String dateString) {
+        try {
+            return new Date(FastDateParser.parseIso8601(dateString));
+        } catch (ParseException pe) {
+            return parseDate(dateString, CALENDAR_DATE_FORMAT);
+        }
+    }
+
+    private static Date parseDate(String dateString, String format) {
         try {
             GregorianCalendar calendar = new GregorianCalendar();
             SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.US);
@@ -446,32 +580,4 @@ public class TWiTFetcher {
             return null;
         }
     }
-
-    private String parseRunningTime(String runningTime) {
-        int hours = 0;
-        int minutes = 0;
-        int seconds = 0;
-
-        String[] runningTimeComponents = runningTime.split(":");
-        if (runningTimeComponents.length == 3) {
-            seconds = Integer.parseInt(runningTimeComponents[2]);
-            minutes = Integer.parseInt(runningTimeComponents[1]);
-            hours = Integer.parseInt(runningTimeComponents[0]);
-        } else if (runningTimeComponents.length == 2) {
-            seconds = Integer.parseInt(runningTimeComponents[1]);
-            minutes = Integer.parseInt(runningTimeComponents[0]);
-        } else {
-            seconds = Integer.parseInt(runningTimeComponents[0]);
-        }
-
-//        int hoursToMinutes = hours * 60;
-        int secondsToMinutes = (int) Math.round((double) seconds / 60);
-        minutes += secondsToMinutes;
-
-        if (hours > 0) {
-            return mContext.getString(R.string.episode_running_time_long, hours, minutes);
-        } else {
-            return mContext.getString(R.string.episode_running_time_short, minutes);
-        }
-    }
 }
@@ -1,10 +1,12 @@
 package com.tragicfruit.twitcast.database;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.tragicfruit.twitcast.R;
@@ -12,32 +14,133 @@ import com.tragicfruit.twitcast.constants.Constants;
 import com.tragicfruit.twitcast.database.TWiTDbSchema.EpisodeTable;
 import com.tragicfruit.twitcast.database.TWiTDbSchema.ShowTable;
 import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.episode.EpisodeDetails;
+import com.tragicfruit.twitcast.episode.StreamQuality;
 import com.tragicfruit.twitcast.show.Show;
 import com.tragicfruit.twitcast.stream.Stream;
-import com.tragicfruit.twitcast.utils.QueryPreferences;
+import com.tragicfruit.twitcast.utils.CoverArtCache;
+import com.tragicfruit.twitcast.utils.CoverArtThumbnails;
+import com.tragicfruit.twitcast.utils.DayBuckets;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by Jeremy on 29/02/2016.
  */
 public class TWiTLab implements TWiTDatabase {
     private static final String TAG = "TWiTDatabase";
-
-    private List<Show> mShows;
-    private List<Episode> mEpisodes;
+    private static final long SAVE_DELAY_MILLIS = 500;
+    private static final long MIN_SAVE_INTERVAL_MILLIS = 5000;
+    private static final int EPISODE_PAGE_SIZE = 40;
+    private static final int MAX_EPISODE_PAGES = 6;
+    private static final int MAX_CACHED_DETAIL_LENGTH = 128 * 1024;
+
+    // newest first, then by title, as EpisodeIndex.NEWEST_FIRST
+    private static final String EPISODE_ORDER =
+            EpisodeTable.Cols.PUBLICATION_DATE + " desc, " + EpisodeTable.Cols.TITLE;
+
+    // page loads queue here rather than behind network requests on the AsyncTask executor
+    private static final ExecutorService sPageExecutor = Executors.newSingleThreadExecutor();
+
+    // replaced, never changed, so readers need no lock; writers hold mWriteLock
+    private volatile EpisodeIndex mIndex = EpisodeIndex.EMPTY;
+    private ShowMatcher mShowMatcher;
+    private final Object mWriteLock = new Object();
     private ConcurrentMap<String, Stream> mStreams;
     private static TWiTLab sTWiTLab;
 
+    /**
+     * The steps of loading the library at startup, in order.
+     */
+    public enum Stage {
+        /** Shows without cover art. */
+        SHOWS,
+        /** Cover art for the shows that fit on screen. */
+        VISIBLE_COVER_ART,
+        EPISODES,
+        /** Cover art for every show. */
+        ALL_COVER_ART
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Object mStageLock = new Object();
+    private final List<StageCallback> mStageCallbacks = new ArrayList<>();
+    private Stage mReadyStage;
+    private long mStartTime;
+
+    private static class StageCallback {
+        final Stage mStage;
+        final Runnable mCallback;
+
+        StageCallback(Stage stage, Runnable callback) {
+            mStage = stage;
+            mCallback = callback;
+        }
+    }
+
+    private static final String[] SHOW_COLUMNS = {
+            ShowTable.Cols.TITLE,
+            ShowTable.Cols.SHORT_CODE,
+            ShowTable.Cols.COVER_ART_URL,
+            ShowTable.Cols.COVER_ART_URL_SMALL,
+            ShowTable.Cols.COVER_ART_LOCAL_PATH,
+            ShowTable.Cols.ID,
+            ShowTable.Cols.DESCRIPTION,
+            ShowTable.Cols.VIDEO_HD_FEED,
+            ShowTable.Cols.VIDEO_LARGE_FEED,
+            ShowTable.Cols.VIDEO_SMALL_FEED,
+            ShowTable.Cols.AUDIO_FEED,
+            ShowTable.Cols.LOADED_ALL_EPISODES
+    };
+
+    // what the lists need; subtitles and show notes are details, read and written apart
+    private static final String[] EPISODE_COLUMNS = {
+            EpisodeTable.Cols.TITLE,
+            EpisodeTable.Cols.PUBLICATION_DATE,
+            EpisodeTable.Cols.VIDEO_HD_URL,
+            EpisodeTable.Cols.VIDEO_LARGE_URL,
+            EpisodeTable.Cols.VIDEO_SMALL_URL,
+            EpisodeTable.Cols.AUDIO_URL,
+            EpisodeTable.Cols.RUNNING_TIME,
+            EpisodeTable.Cols.SHOW_ID,
+            EpisodeTable.Cols.DURATION
+    };
+
+    private final Executor mMainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mMainHandler.post(command);
+        }
+    };
+    private final List<Runnable> mEpisodesSavedCallbacks = new ArrayList<>();
+
     private Context mContext;
-    private SQLiteDatabase mSQLiteDatabase;
+    private volatile SQLiteDatabase mSQLiteDatabase;
+    private TableWriter mShowWriter = new TableWriter(ShowTable.NAME, SHOW_COLUMNS, ShowTable.Cols.ID);
+    private TableWriter mEpisodeWriter = new TableWriter(EpisodeTable.NAME, EPISODE_COLUMNS, EpisodeTable.Cols.TITLE);
+    private SaveQueue mSaveQueue = new SaveQueue(SAVE_DELAY_MILLIS, MIN_SAVE_INTERVAL_MILLIS);
+    private EpisodeDetailStore mDetails = new EpisodeDetailStore(new EpisodeDetailStore.Loader() {
+        @Override
+        public EpisodeDetails load(String title) {
+            return loadEpisodeDetails(title);
+        }
+    }, MAX_CACHED_DETAIL_LENGTH);
 
-    public static TWiTLab get(Context context) {
+    public static synchronized TWiTLab get(Context context) {
         if (sTWiTLab == null) {
             sTWiTLab = new TWiTLab(context);
         }
@@ -46,33 +149,132 @@ public class TWiTLab implements TWiTDatabase {
     }
 
     private TWiTLab(Context context) {
+        mStartTime = System.currentTimeMillis();
         mContext = context.getApplicationContext();
+        mStreams = loadStreams();
+
+        // the library loads in stages so screens can render as soon as their data is ready
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } finally {
+                    // never leave screens waiting, even if loading failed
+                    if (!isReady(Stage.ALL_COVER_ART)) {
+                        setReady(Stage.ALL_COVER_ART);
+                    }
+                }
+            }
+        });
+
+        Log.i(TAG, "Startup: created in " + (System.currentTimeMillis() - mStartTime) + "ms on main thread");
+    }
+
+    private void load() {
         mSQLiteDatabase = new TWiTBaseHelper(mContext).getWritableDatabase();
 
+        List<Show> shows;
         try {
-            mShows = loadShows();
-            loadCoverArt();
+            shows = loadShows();
+            mShowWriter.setSavedRows(getShowRows(shows));
         } catch (Exception e) {
-            mShows = new ArrayList<>();
+            shows = new ArrayList<>();
             Log.e(TAG, "Error loading shows", e);
         }
+        setShows(shows);
+        setReady(Stage.SHOWS);
+
+        CoverArtThumbnails thumbnails = new CoverArtThumbnails(mContext);
+        CoverArtCache coverArtCache = CoverArtCache.get(mContext);
+        int size = coverArtCache.getSize();
+        int visibleCount = Math.min(shows.size(), thumbnails.getVisibleCellCount());
+        loadCoverArt(coverArtCache, shows.subList(0, visibleCount), size);
+        setReady(Stage.VISIBLE_COVER_ART);
 
         try {
-            mEpisodes = loadEpisodes();
+            List<Episode> episodes = loadEpisodes();
+            linkShowsAndEpisodes(episodes);
+            // every row in the table, so the next save deletes the ones left without a show
+            mEpisodeWriter.setSavedRows(getEpisodeRows(episodes));
         } catch (Exception e) {
-            mEpisodes = new ArrayList<>();
             Log.e(TAG, "Error loading episodes", e);
+            mIndex = mIndex.withoutEpisodes();
         }
+        setReady(Stage.EPISODES);
 
-        try {
-            linkShowsAndEpisodes();
-        } catch (Exception e) {
-            Log.e(TAG, "Error linking shows and episodes", e);
-            mShows = new ArrayList<>();
-            mEpisodes = new ArrayList<>();
+        // the rest only as far as memory allows, the others load once scrolled to
+        loadCoverArt(coverArtCache, shows.subList(visibleCount, shows.size()), size);
+        Log.d(TAG, coverArtCache.toString());
+        setReady(Stage.ALL_COVER_ART);
+    }
+
+    private void setReady(Stage stage) {
+        List<Runnable> callbacks = new ArrayList<>();
+        synchronized (mStageLock) {
+            mReadyStage = stage;
+            mStageLock.notifyAll();
+
+            Iterator<StageCallback> iterator = mStageCallbacks.iterator();
+            while (iterator.hasNext()) {
+                StageCallback stageCallback = iterator.next();
+                if (stageCallback.mStage.compareTo(stage) <= 0) {
+                    callbacks.add(stageCallback.mCallback);
+                    iterator.remove();
+                }
+            }
         }
 
-        mStreams = loadStreams();
+        Log.i(TAG, "Startup: " + stage + " ready after " + (System.currentTimeMillis() - mStartTime) + "ms");
+        for (Runnable callback : callbacks) {
+            mMainHandler.post(callback);
+        }
+    }
+
+    public boolean isReady(Stage stage) {
+        synchronized (mStageLock) {
+            return mReadyStage != null && mReadyStage.compareTo(stage) >= 0;
+        }
+    }
+
+    /**
+     * Runs the callback on the main thread once the stage is ready, straight away if it already
+     * is and this is the main thread.
+     */
+    public void whenReady(Stage stage, Runnable callback) {
+        synchronized (mStageLock) {
+            if (!isReady(stage)) {
+                mStageCallbacks.add(new StageCallback(stage, callback));
+                return;
+            }
+        }
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            callback.run();
+        } else {
+            mMainHandler.post(callback);
+        }
+    }
+
+    /**
+     * Blocks until the stage is ready, even if interrupted, so callers can rely on its data.
+     * The interrupt is kept for the caller to see. Avoid on the main thread.
+     */
+    public void awaitReady(Stage stage) {
+        boolean interrupted = false;
+        synchronized (mStageLock) {
+            while (!isReady(stage)) {
+                try {
+                    mStageLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     // TODO: currently hardcoded, need to get streams from TWiT API
@@ -142,134 +344,135 @@ public class TWiTLab implements TWiTDatabase {
         return mStreams;
     }
 
-    private void loadCoverArt() {
-        double reduceFactor = 1.0 / QueryPreferences.getGridSpanCount(mContext);
-        for (Show show : mShows) {
-            show.setCoverArt(show.getCoverArtLocalPath(), mContext, reduceFactor);
+    private static void loadCoverArt(CoverArtCache coverArtCache, List<Show> shows, int size) {
+        for (Show show : shows) {
+            coverArtCache.preload(show.getCoverArtLocalPath(), size);
         }
     }
 
-    private void linkShowsAndEpisodes() {
-        for (Episode episode : mEpisodes) {
-            Show showForEpisode = episode.getShow();
-            if (showForEpisode != null) {
-                showForEpisode.addEpisode(episode);
-            } else {
-                Log.e(TAG, "No show found for " + episode.getTitle() + " - removed.");
-                mEpisodes.remove(episode);
+    private void linkShowsAndEpisodes(List<Episode> episodes) {
+        synchronized (mWriteLock) {
+            EpisodeIndex.Builder builder = mIndex.edit();
+            for (Episode episode : episodes) {
+                if (episode.getShow() != null) {
+                    builder.put(episode);
+                } else {
+                    Log.e(TAG, "No show found for " + episode.getTitle() + " - removed.");
+                }
             }
+            publish(builder);
         }
     }
 
     public List<Show> getShows() {
-        return mShows;
+        return mIndex.getShows();
     }
 
     public void setShows(List<Show> shows) {
-        mShows = shows;
+        synchronized (mWriteLock) {
+            mShowMatcher = new ShowMatcher(shows);
+            mIndex = mIndex.withShows(shows);
+        }
     }
 
     public Show getShow(int id) {
-        for (Show show: mShows) {
-            if (show.getId() == id) {
-                return show;
-            }
-        }
-        return null;
+        return mIndex.getShow(id);
+    }
+
+    Context getContext() {
+        return mContext;
     }
 
     public List<Episode> getEpisodes() {
-        return mEpisodes;
+        return mIndex.getEpisodes();
     }
 
-    public boolean addEpisodes(List<Episode> episodeList) {
-        boolean newEpisodes = false;
-        for (Episode episode : episodeList) {
-            Show showForEpisode = getShowFromEpisode(episode);
+    /**
+     * Returns the show's episodes, newest first.
+     */
+    public List<Episode> getEpisodes(Show show) {
+        return mIndex.getEpisodes(show);
+    }
 
-            if (showForEpisode == null) {
-                Log.d(TAG, "No show found for " + episode.getTitle());
-                continue;
-            }
+    /**
+     * Adds episodes from the aggregate feeds and publishes the result, once the saved episodes
+     * are loaded. Call off the main thread; the episodes must not be changed afterwards.
+     */
+    public boolean addEpisodes(List<Episode> episodeList) {
+        awaitReady(Stage.EPISODES);
+        synchronized (mWriteLock) {
+            EpisodeIndex.Builder builder = mIndex.edit();
+            boolean newEpisodes = false;
+            for (Episode episode : episodeList) {
+                Show showForEpisode = getShowFromEpisode(episode);
+
+                if (showForEpisode == null) {
+                    Log.d(TAG, "No show found for " + episode.getTitle());
+                    continue;
+                }
 
-            if (mEpisodes.contains(episode)) {
-                int index = mEpisodes.indexOf(episode);
-                if (episodeHasAllUrls(mEpisodes.get(index))) {
+                Episode existingEpisode = builder.getEpisode(episode.getTitle());
+                if (existingEpisode != null && episodeHasAllUrls(existingEpisode)) {
                     continue;
-                } else {
-                    mEpisodes.remove(episode);
-                    showForEpisode.removeEpisode(episode);
                 }
-            }
 
-            newEpisodes = true;
-            mEpisodes.add(episode);
-            showForEpisode.addEpisode(episode);
-            episode.setShow(showForEpisode);
-            Log.d(TAG, episode.getTitle() + " added to " + showForEpisode.getTitle());
+                newEpisodes = true;
+                episode.setShow(showForEpisode);
+                detachDetails(episode);
+                builder.put(episode);
+                Log.d(TAG, episode.getTitle() + " added to " + showForEpisode.getTitle());
+            }
 
-            sortEpisodes(mEpisodes);
-            sortEpisodes(showForEpisode.getEpisodes());
+            publish(builder);
+            return newEpisodes;
         }
-
-        cleanUpOldShows();
-
-        return newEpisodes;
     }
 
+    /**
+     * Adds episodes from the show's own feeds and publishes the result, once the saved episodes
+     * are loaded. Call off the main thread; the episodes must not be changed afterwards.
+     */
     public boolean addEpisodes(List<Episode> episodeList, Show show) {
-        boolean newEpisodes = false;
-        for (Episode episode : episodeList) {
-            episode.setShow(show);
-            episode.cleanTitle();
-
-            if (mEpisodes.contains(episode)) {
-                int index = mEpisodes.indexOf(episode);
-                if (episodeHasAllUrls(mEpisodes.get(index))) {
+        awaitReady(Stage.EPISODES);
+        synchronized (mWriteLock) {
+            EpisodeIndex.Builder builder = mIndex.edit();
+            boolean newEpisodes = false;
+            for (Episode episode : episodeList) {
+                episode.setShow(show);
+                episode.cleanTitle();
+
+                Episode existingEpisode = builder.getEpisode(episode.getTitle());
+                if (existingEpisode != null && episodeHasAllUrls(existingEpisode)) {
                     continue;
-                } else {
-                    mEpisodes.remove(episode);
-                    show.removeEpisode(episode);
                 }
+
+                newEpisodes = true;
+                detachDetails(episode);
+                builder.put(episode);
+                Log.d(TAG, episode.getTitle() + " added to " + show.getTitle());
             }
 
-            newEpisodes = true;
-            mEpisodes.add(episode);
-            show.addEpisode(episode);
-            Log.d(TAG, episode.getTitle() + " added to " + show.getTitle());
+            publish(builder);
+            return newEpisodes;
         }
-
-        sortEpisodes(mEpisodes);
-        sortEpisodes(show.getEpisodes());
-
-        cleanUpOldShows();
-
-        return newEpisodes;
     }
 
-    private void cleanUpOldShows() {
-        if (mEpisodes.size() <= Constants.MAX_NUMBER_OF_EPISODES) {
-            return;
-        }
-
-        while (mEpisodes.size() > Constants.MAX_NUMBER_OF_EPISODES) {
-            Episode removedEpisode = mEpisodes.remove(mEpisodes.size() - 1);
-            removedEpisode.getShow().getEpisodes().remove(removedEpisode);
+    // callers hold mWriteLock
+    private void publish(EpisodeIndex.Builder builder) {
+        mIndex = builder.build(Constants.MAX_NUMBER_OF_EPISODES);
 
+        for (Episode removedEpisode : builder.getEvicted()) {
+            mDetails.remove(removedEpisode.getTitle());
             Log.d(TAG, "Clean up: removed " + removedEpisode.getTitle());
         }
     }
 
-    private void sortEpisodes(List<Episode> episodes) {
-        Collections.sort(episodes, new Comparator<Episode>() {
-            @Override
-            public int compare(Episode lhs, Episode rhs) {
-                long firstDate = lhs.getPublicationDate().getTime();
-                long secondDate = rhs.getPublicationDate().getTime();
-
-                return firstDate > secondDate ? -1 : (lhs == rhs ? 0 : 1);
-            }
-        });
+    // the lists keep light episodes, their details wait in mDetails until saved
+    private void detachDetails(Episode episode) {
+        mDetails.putUnsaved(episode.getTitle(),
+                new EpisodeDetails(episode.getSubtitle(), episode.getShowNotes()));
+        episode.setSubtitle(null);
+        episode.setShowNotes(null);
     }
 
     private boolean episodeHasAllUrls(Episode episode) {
@@ -277,17 +480,30 @@ public class TWiTLab implements TWiTDatabase {
                 episode.getVideoSmallUrl() != null && episode.getAudioUrl() != null;
     }
 
-    private Show getShowFromEpisode(Episode episode) {
-        for (Show show: mShows) {
-            String episodeTitle = episode.getTitle();
-            String showTitle = show.getTitle();
-
-            if (episodeTitle.contains(showTitle)) {
-                return show;
+    /**
+     * Returns the URLs of the given quality for episodes that already have every URL and are
+     * older than any episode still missing one, from the show's episodes or all episodes if show
+     * is null. A refresh can stop reading a feed once it reaches one of these.
+     */
+    public Set<String> getCompleteEpisodeUrls(Show show, StreamQuality quality) {
+        EpisodeIndex index = mIndex;
+        List<Episode> episodes = show == null ? index.getEpisodes() : index.getEpisodes(show);
+        Set<String> urls = new HashSet<>();
+
+        // episodes are newest first, so walk up from the oldest until one is incomplete
+        for (int i = episodes.size() - 1; i >= 0; i--) {
+            Episode episode = episodes.get(i);
+            if (!episodeHasAllUrls(episode)) {
+                break;
             }
+            urls.add(episode.getUrl(quality));
         }
 
-        return null;
+        return urls;
+    }
+
+    private Show getShowFromEpisode(Episode episode) {
+        return mShowMatcher.match(episode.getTitle());
     }
 
     public boolean isExcludedShow(Show show) {
@@ -303,9 +519,12 @@ public class TWiTLab implements TWiTDatabase {
     }
 
     public void resetEpisodes() {
-        mEpisodes = new ArrayList<>();
-        for (Show show: mShows) {
-            show.setLoadedAllEpisodes(false);
+        synchronized (mWriteLock) {
+            mIndex = mIndex.withoutEpisodes();
+            mDetails.clear();
+            for (Show show: mIndex.getShows()) {
+                show.setLoadedAllEpisodes(false);
+            }
         }
     }
 
@@ -328,22 +547,27 @@ public class TWiTLab implements TWiTDatabase {
         return shows;
     }
 
+    /**
+     * Queues the shows to be saved. Requests made close together are written once.
+     */
     public void saveShows() {
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... params) {
-                mSQLiteDatabase.delete(ShowTable.NAME, null, null);
-                for (Show show : mShows) {
-                    ContentValues values = getContentValues(show);
-
-                    mSQLiteDatabase.insert(ShowTable.NAME, null, values);
-                }
+        mSaveQueue.save(ShowTable.NAME, mWriteShows);
+    }
 
-                Log.i(TAG, "Saved shows to database");
-                return null;
+    // reads the shows when it runs, so it writes the latest of any coalesced requests
+    private final Runnable mWriteShows = new Runnable() {
+        @Override
+        public void run() {
+            awaitReady(Stage.EPISODES);
+            try {
+                TableWriter.Result result = mShowWriter.write(mSQLiteDatabase, getShowRows(mIndex.getShows()));
+                Log.i(TAG, "Saved shows to database: " + result + "; " + mSaveQueue.getStats());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error saving shows", e);
+                throw e;
             }
-        }.execute();
-    }
+        }
+    };
 
     private ShowCursorWrapper queryShows(String whereClause, String[] whereArgs) {
         Cursor cursor = mSQLiteDatabase.query(
@@ -362,7 +586,7 @@ public class TWiTLab implements TWiTDatabase {
     private EpisodeCursorWrapper queryEpisodes(String whereClause, String[] whereArgs) {
         Cursor cursor = mSQLiteDatabase.query(
                 EpisodeTable.NAME,
-                null, // Columns - null selects all columns
+                EPISODE_COLUMNS,
                 whereClause,
                 whereArgs,
                 null, // groupBy
@@ -392,52 +616,366 @@ public class TWiTLab implements TWiTDatabase {
         return episodes;
     }
 
+    /**
+     * Queues the episodes to be saved. Requests made close together are written once.
+     */
     public void saveEpisodes() {
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... params) {
-                mSQLiteDatabase.delete(EpisodeTable.NAME, null, null);
-                for (Episode episode : mEpisodes) {
-                    ContentValues values = getContentValues(episode);
+        mSaveQueue.save(EpisodeTable.NAME, mWriteEpisodes);
+    }
+
+    // published episodes never change, so the latest snapshot can be read in the background
+    private final Runnable mWriteEpisodes = new Runnable() {
+        @Override
+        public void run() {
+            awaitReady(Stage.EPISODES);
+            try {
+                // details are detached and published under the lock, so each has its row
+                List<Episode> episodes;
+                final Map<String, EpisodeDetails> details;
+                synchronized (mWriteLock) {
+                    episodes = mIndex.getEpisodes();
+                    details = mDetails.getUnsaved();
+                }
 
-                    mSQLiteDatabase.insert(EpisodeTable.NAME, null, values);
+                TableWriter.Result result = mEpisodeWriter.write(mSQLiteDatabase,
+                        getEpisodeRows(episodes), new TableWriter.ExtraWrite() {
+                            @Override
+                            public void write(SQLiteDatabase db) {
+                                writeEpisodeDetails(db, details);
+                            }
+                        });
+                mDetails.markSaved(details);
+                Log.i(TAG, "Saved episodes to database: " + result + ", " + details.size()
+                        + " details; " + mSaveQueue.getStats() + "; " + mDetails);
+                if (!result.isEmpty()) {
+                    notifyEpisodesSaved();
                 }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error saving episodes", e);
+                throw e;
+            }
+        }
+    };
+
+    // rows are written first, so new episodes are there to update
+    private void writeEpisodeDetails(SQLiteDatabase db, Map<String, EpisodeDetails> details) {
+        if (details.isEmpty()) {
+            return;
+        }
 
-                Log.i(TAG, "Saved episodes to database");
+        SQLiteStatement update = db.compileStatement("update " + EpisodeTable.NAME + " set "
+                + EpisodeTable.Cols.SUBTITLE + " = ?, " + EpisodeTable.Cols.SHOW_NOTES + " = ?"
+                + " where " + EpisodeTable.Cols.TITLE + " = ?");
+        try {
+            for (Map.Entry<String, EpisodeDetails> entry : details.entrySet()) {
+                TableWriter.bind(update, 1, entry.getValue().getSubtitle());
+                TableWriter.bind(update, 2, entry.getValue().getShowNotes());
+                TableWriter.bind(update, 3, entry.getKey());
+                update.executeUpdateDelete();
+            }
+        } finally {
+            update.close();
+        }
+    }
+
+    private EpisodeDetails loadEpisodeDetails(String title) {
+        Cursor cursor = mSQLiteDatabase.query(
+                EpisodeTable.NAME,
+                new String[] { EpisodeTable.Cols.SUBTITLE, EpisodeTable.Cols.SHOW_NOTES },
+                EpisodeTable.Cols.TITLE + " = ?",
+                new String[] { title },
+                null, // groupBy
+                null, // having
+                null // orderBy
+        );
+
+        try {
+            if (!cursor.moveToFirst()) {
                 return null;
             }
-        }.execute();
-    }
-
-    private static ContentValues getContentValues(Show show) {
-        ContentValues values = new ContentValues();
-        values.put(ShowTable.Cols.TITLE, show.getTitle());
-        values.put(ShowTable.Cols.SHORT_CODE, show.getShortCode());
-        values.put(ShowTable.Cols.COVER_ART_URL, show.getCoverArtUrl());
-        values.put(ShowTable.Cols.COVER_ART_URL_SMALL, show.getCoverArtUrlSmall());
-        values.put(ShowTable.Cols.COVER_ART_LOCAL_PATH, show.getCoverArtLocalPath());
-        values.put(ShowTable.Cols.ID, show.getId());
-        values.put(ShowTable.Cols.DESCRIPTION, show.getDescription());
-        values.put(ShowTable.Cols.VIDEO_HD_FEED, show.getVideoHdFeed());
-        values.put(ShowTable.Cols.VIDEO_LARGE_FEED, show.getVideoLargeFeed());
-        values.put(ShowTable.Cols.VIDEO_SMALL_FEED, show.getVideoSmallFeed());
-        values.put(ShowTable.Cols.AUDIO_FEED, show.getAudioFeed());
-        values.put(ShowTable.Cols.LOADED_ALL_EPISODES, show.hasLoadedAllEpisodes() ? 1 : 0); // need to test this
-        return values;
-    }
-
-    private static ContentValues getContentValues(Episode episode) {
-        ContentValues values = new ContentValues();
-        values.put(EpisodeTable.Cols.TITLE, episode.getTitle());
-        values.put(EpisodeTable.Cols.PUBLICATION_DATE, episode.getPublicationDate().getTime()); // need to test this
-        values.put(EpisodeTable.Cols.SUBTITLE, episode.getSubtitle());
-        values.put(EpisodeTable.Cols.SHOW_NOTES, episode.getShowNotes());
-        values.put(EpisodeTable.Cols.VIDEO_HD_URL, episode.getVideoHdUrl());
-        values.put(EpisodeTable.Cols.VIDEO_LARGE_URL, episode.getVideoLargeUrl());
-        values.put(EpisodeTable.Cols.VIDEO_SMALL_URL, episode.getVideoSmallUrl());
-        values.put(EpisodeTable.Cols.AUDIO_URL, episode.getAudioUrl());
-        values.put(EpisodeTable.Cols.RUNNING_TIME, episode.getRunningTime());
-        values.put(EpisodeTable.Cols.SHOW_ID, episode.getShow().getId()); // need to test this
-        return values;
+            return new EpisodeDetails(cursor.getString(0), cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public interface DetailsCallback {
+        void onDetailsLoaded(Episode episode, EpisodeDetails details);
+    }
+
+    /**
+     * Returns the episode's subtitle and show notes if they are in memory, or null.
+     */
+    public EpisodeDetails getCachedEpisodeDetails(Episode episode) {
+        return mDetails.getCached(episode.getTitle());
+    }
+
+    /**
+     * Returns the episode's subtitle and show notes, or null if it has none saved. Reads the
+     * database if they are not in memory, so call off the main thread.
+     */
+    public EpisodeDetails getEpisodeDetails(Episode episode) {
+        awaitReady(Stage.EPISODES);
+        return mDetails.get(episode.getTitle());
+    }
+
+    /**
+     * Loads the episode's subtitle and show notes in the background, then passes them to the
+     * callback on the main thread.
+     */
+    public void loadEpisodeDetails(final Episode episode, final DetailsCallback callback) {
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                EpisodeDetails details = null;
+                try {
+                    details = getEpisodeDetails(episode);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error loading details of " + episode.getTitle(), e);
+                }
+
+                final EpisodeDetails loadedDetails = details;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDetailsLoaded(episode, loadedDetails);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs the callback on the main thread whenever saved episodes change, so lists paging
+     * through them can reload.
+     */
+    public void addEpisodesSavedCallback(Runnable callback) {
+        synchronized (mEpisodesSavedCallbacks) {
+            mEpisodesSavedCallbacks.add(callback);
+        }
+    }
+
+    public void removeEpisodesSavedCallback(Runnable callback) {
+        synchronized (mEpisodesSavedCallbacks) {
+            mEpisodesSavedCallbacks.remove(callback);
+        }
+    }
+
+    private void notifyEpisodesSaved() {
+        synchronized (mEpisodesSavedCallbacks) {
+            for (Runnable callback : mEpisodesSavedCallbacks) {
+                mMainHandler.post(callback);
+            }
+        }
+    }
+
+    /**
+     * Opens a paged list of the saved episodes of the show, or of every show if null, newest
+     * first. Reads every episode's row, so call off the main thread once episodes are ready.
+     */
+    public EpisodePager openEpisodePager(Show show) {
+        long startTime = System.currentTimeMillis();
+
+        // episodes of shows not loaded have nothing to show them with
+        final String whereClause;
+        final String[] whereArgs;
+        if (show == null) {
+            whereClause = EpisodeTable.Cols.SHOW_ID + " in (select " + ShowTable.Cols.ID
+                    + " from " + ShowTable.NAME + ")";
+            whereArgs = null;
+        } else {
+            whereClause = EpisodeTable.Cols.SHOW_ID + " = ?";
+            whereArgs = new String[] { String.valueOf(show.getId()) };
+        }
+
+        int[] days;
+        final int[] keys;
+        int[] contentHashes;
+        final long[] pageDates;
+        final String[] pageTitles;
+        Cursor cursor = mSQLiteDatabase.query(
+                EpisodeTable.NAME,
+                EPISODE_COLUMNS,
+                whereClause,
+                whereArgs,
+                null, // groupBy
+                null, // having
+                EPISODE_ORDER
+        );
+        try {
+            int titleIndex = cursor.getColumnIndex(EpisodeTable.Cols.TITLE);
+            int dateIndex = cursor.getColumnIndex(EpisodeTable.Cols.PUBLICATION_DATE);
+
+            // bucketed once here, so sections never need the dates
+            TimeZone zone = TimeZone.getDefault();
+            days = new int[cursor.getCount()];
+            keys = new int[days.length];
+            contentHashes = new int[days.length];
+            pageDates = new long[(days.length + EPISODE_PAGE_SIZE - 1) / EPISODE_PAGE_SIZE];
+            pageTitles = new String[pageDates.length];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                days[i] = DayBuckets.getDay(cursor.getLong(dateIndex), zone);
+                keys[i] = cursor.getString(titleIndex).hashCode();
+
+                // where each page starts, so pages are found by key rather than offset
+                if (i % EPISODE_PAGE_SIZE == 0) {
+                    pageDates[i / EPISODE_PAGE_SIZE] = cursor.getLong(dateIndex);
+                    pageTitles[i / EPISODE_PAGE_SIZE] = cursor.getString(titleIndex);
+                }
+
+                // only hashed, so the rows aren't kept
+                int hash = 0;
+                for (int column = 0; column < EPISODE_COLUMNS.length; column++) {
+                    String value = cursor.getString(column);
+                    hash = 31 * hash + (value == null ? 0 : value.hashCode());
+                }
+                contentHashes[i] = hash;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        EpisodePager.PageLoader loader = new EpisodePager.PageLoader() {
+            @Override
+            public List<Episode> load(int start, int count) {
+                int page = start / EPISODE_PAGE_SIZE;
+                return loadEpisodePage(whereClause, whereArgs, pageDates, pageTitles, page, keys,
+                        start, count);
+            }
+        };
+
+        Log.d(TAG, "Opened " + days.length + " episodes in "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        return new EpisodePager(days, keys, contentHashes, loader, EPISODE_PAGE_SIZE,
+                MAX_EPISODE_PAGES, sPageExecutor, mMainExecutor);
+    }
+
+    /**
+     * Returns the page's episodes as they were when the pager was opened. Saves since then may
+     * have added or deleted rows, so the page's rows are read from where it started to where the
+     * next page started, and matched to the positions by key. Rows added since are left out and
+     * rows deleted since are null, until the save that changed them reloads the list.
+     */
+    private List<Episode> loadEpisodePage(String whereClause, String[] whereArgs,
+                                          long[] pageDates, String[] pageTitles, int page,
+                                          int[] keys, int start, int count) {
+        StringBuilder selection = new StringBuilder("(").append(whereClause).append(')');
+        List<String> selectionArgs = new ArrayList<>();
+        if (whereArgs != null) {
+            selectionArgs.addAll(Arrays.asList(whereArgs));
+        }
+
+        // at or after the page's first row in EPISODE_ORDER
+        selection.append(" and (" + EpisodeTable.Cols.PUBLICATION_DATE + " < ? or ("
+                + EpisodeTable.Cols.PUBLICATION_DATE + " = ? and " + EpisodeTable.Cols.TITLE
+                + " >= ?))");
+        selectionArgs.add(String.valueOf(pageDates[page]));
+        selectionArgs.add(String.valueOf(pageDates[page]));
+        selectionArgs.add(pageTitles[page]);
+
+        // and before the next page's
+        if (page + 1 < pageDates.length) {
+            selection.append(" and (" + EpisodeTable.Cols.PUBLICATION_DATE + " > ? or ("
+                    + EpisodeTable.Cols.PUBLICATION_DATE + " = ? and " + EpisodeTable.Cols.TITLE
+                    + " < ?))");
+            selectionArgs.add(String.valueOf(pageDates[page + 1]));
+            selectionArgs.add(String.valueOf(pageDates[page + 1]));
+            selectionArgs.add(pageTitles[page + 1]);
+        }
+
+        Map<Integer, Episode> episodesByKey = new HashMap<>();
+        EpisodeCursorWrapper cursor = new EpisodeCursorWrapper(mSQLiteDatabase.query(
+                EpisodeTable.NAME,
+                EPISODE_COLUMNS,
+                selection.toString(),
+                selectionArgs.toArray(new String[selectionArgs.size()]),
+                null, // groupBy
+                null, // having
+                EPISODE_ORDER
+        ), this);
+
+        try {
+            while (cursor.moveToNext()) {
+                Episode episode = cursor.getEpisode();
+                if (episode.getShow() != null) {
+                    episodesByKey.put(episode.getTitle().hashCode(), episode);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<Episode> episodes = new ArrayList<>(count);
+        int missing = 0;
+        for (int position = start; position < start + count; position++) {
+            Episode episode = episodesByKey.get(keys[position]);
+            if (episode == null) {
+                missing++;
+            }
+            episodes.add(episode);
+        }
+        if (missing > 0) {
+            Log.d(TAG, missing + " episodes from " + start + " deleted or without a show");
+        }
+
+        return episodes;
+    }
+
+    /**
+     * Writes queued saves now instead of waiting to coalesce more, e.g. when the app stops.
+     */
+    public void flush() {
+        mSaveQueue.flush();
+    }
+
+    private static Map<String, Object[]> getShowRows(List<Show> shows) {
+        Map<String, Object[]> rows = new LinkedHashMap<>();
+        for (Show show : shows) {
+            rows.put(String.valueOf(show.getId()), getRow(show));
+        }
+        return rows;
+    }
+
+    private static Map<String, Object[]> getEpisodeRows(List<Episode> episodes) {
+        Map<String, Object[]> rows = new LinkedHashMap<>();
+        for (Episode episode : episodes) {
+            rows.put(episode.getTitle(), getRow(episode));
+        }
+        return rows;
+    }
+
+    // in the order of SHOW_COLUMNS
+    private static Object[] getRow(Show show) {
+        return new Object[] {
+                show.getTitle(),
+                show.getShortCode(),
+                show.getCoverArtUrl(),
+                show.getCoverArtUrlSmall(),
+                show.getCoverArtLocalPath(),
+                show.getId(),
+                show.getDescription(),
+                show.getVideoHdFeed(),
+                show.getVideoLargeFeed(),
+                show.getVideoSmallFeed(),
+                show.getAudioFeed(),
+                show.hasLoadedAllEpisodes() ? 1 : 0
+        };
+    }
+
+    // in the order of EPISODE_COLUMNS
+    private static Object[] getRow(Episode episode) {
+        return new Object[] {
+                episode.getTitle(),
+                episode.getPublicationDate().getTime(),
+                episode.getVideoHdUrl(),
+                episode.getVideoLargeUrl(),
+                episode.getVideoSmallUrl(),
+                episode.getAudioUrl(),
+                // formatted from the duration as loaded, so only kept where that isn't known
+                episode.getDuration() >= 0 ? null : episode.getRunningTime(),
+                // only null for rows loaded without a show, which are never written
+                episode.getShow() == null ? null : episode.getShow().getId(),
+                episode.getDuration() >= 0 ? episode.getDuration() : null
+        };
     }
 }
@@ -0,0 +1,203 @@
+package com.tragicfruit.twitcast.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Saves a table incrementally. Rows are compared with the ones last written, then only new or
+ * changed rows are upserted and rows no longer present are deleted, in a single transaction
+ * with precompiled statements.
+ *
+ * Rows are arrays of column values in the order of the columns passed in, keyed by the value of
+ * the key column. Writes must not run concurrently.
+ */
+class TableWriter {
+    private final String mTable;
+    private final String[] mColumns;
+    private final int mKeyIndex;
+    private final Map<String, Object[]> mSavedRows = new HashMap<>();
+
+    static class Result {
+        int mInserted;
+        int mUpdated;
+        int mDeleted;
+        long mMillis;
+
+        boolean isEmpty() {
+            return mInserted + mUpdated + mDeleted == 0;
+        }
+
+        @Override
+        public String toString() {
+            return mInserted + " inserted, " + mUpdated + " updated, " + mDeleted + " deleted in "
+                    + mMillis + "ms";
+        }
+    }
+
+    /**
+     * More statements to run after the rows are written, in the same transaction.
+     */
+    interface ExtraWrite {
+        void write(SQLiteDatabase db);
+    }
+
+    TableWriter(String table, String[] columns, String keyColumn) {
+        mTable = table;
+        mColumns = columns;
+        mKeyIndex = Arrays.asList(columns).indexOf(keyColumn);
+        if (mKeyIndex < 0) {
+            throw new IllegalArgumentException("Key column " + keyColumn + " not in columns");
+        }
+    }
+
+    String[] getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Records rows as already in the table, e.g. after loading them.
+     */
+    synchronized void setSavedRows(Map<String, Object[]> rows) {
+        mSavedRows.clear();
+        mSavedRows.putAll(rows);
+    }
+
+    /**
+     * Makes the table hold exactly the given rows.
+     */
+    synchronized Result write(SQLiteDatabase db, Map<String, Object[]> rows) {
+        return write(db, rows, null);
+    }
+
+    /**
+     * Makes the table hold exactly the given rows, then runs extraWrite if not null. Nothing is
+     * written if either fails.
+     */
+    synchronized Result write(SQLiteDatabase db, Map<String, Object[]> rows, ExtraWrite extraWrite) {
+        long startTime = System.currentTimeMillis();
+        Result result = new Result();
+
+        SQLiteStatement insert = null;
+        SQLiteStatement update = null;
+        SQLiteStatement delete = null;
+
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, Object[]> entry : rows.entrySet()) {
+                Object[] row = entry.getValue();
+                Object[] savedRow = mSavedRows.get(entry.getKey());
+                if (savedRow != null && Arrays.equals(row, savedRow)) {
+                    continue;
+                }
+
+                if (update == null) {
+                    update = db.compileStatement(getUpdateSql());
+                }
+                bindRow(update, row);
+                bind(update, mColumns.length + 1, row[mKeyIndex]);
+
+                if (update.executeUpdateDelete() > 0) {
+                    result.mUpdated++;
+                } else {
+                    if (insert == null) {
+                        insert = db.compileStatement(getInsertSql());
+                    }
+                    bindRow(insert, row);
+                    insert.executeInsert();
+                    result.mInserted++;
+                }
+            }
+
+            for (Map.Entry<String, Object[]> entry : mSavedRows.entrySet()) {
+                if (rows.containsKey(entry.getKey())) {
+                    continue;
+                }
+
+                if (delete == null) {
+                    delete = db.compileStatement(
+                            "delete from " + mTable + " where " + mColumns[mKeyIndex] + " = ?");
+                }
+                bind(delete, 1, entry.getValue()[mKeyIndex]);
+                delete.executeUpdateDelete();
+                result.mDeleted++;
+            }
+
+            if (extraWrite != null) {
+                extraWrite.write(db);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            close(insert);
+            close(update);
+            close(delete);
+        }
+
+        // only once committed, so a failed write is retried in full next time
+        mSavedRows.putAll(rows);
+        Iterator<String> keys = mSavedRows.keySet().iterator();
+        while (keys.hasNext()) {
+            if (!rows.containsKey(keys.next())) {
+                keys.remove();
+            }
+        }
+
+        result.mMillis = System.currentTimeMillis() - startTime;
+        return result;
+    }
+
+    private String getInsertSql() {
+        StringBuilder sql = new StringBuilder("insert into ").append(mTable).append(" (");
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < mColumns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            sql.append(mColumns[i]);
+            values.append('?');
+        }
+
+        return sql.append(") values (").append(values).append(')').toString();
+    }
+
+    private String getUpdateSql() {
+        StringBuilder sql = new StringBuilder("update ").append(mTable).append(" set ");
+        for (int i = 0; i < mColumns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(mColumns[i]).append(" = ?");
+        }
+
+        return sql.append(" where ").append(mColumns[mKeyIndex]).append(" = ?").toString();
+    }
+
+    private void bindRow(SQLiteStatement statement, Object[] row) {
+        for (int i = 0; i < mColumns.length; i++) {
+            bind(statement, i + 1, row[i]);
+        }
+    }
+
+    static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    private static void close(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.tragicfruit.twitcast.database;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-host counters kept by an HttpTransport.
+ */
+public class TransportStats {
+    private final ConcurrentMap<String, HostStats> mHosts = new ConcurrentHashMap<>();
+
+    public static class HostStats {
+        private final AtomicLong mRequests = new AtomicLong();
+        private final AtomicLong mReleasedForReuse = new AtomicLong();
+        private final AtomicLong mBytesOnWire = new AtomicLong();
+        private final AtomicLong mBytesDecoded = new AtomicLong();
+
+        void addRequest() {
+            mRequests.incrementAndGet();
+        }
+
+        void addReleasedForReuse() {
+            mReleasedForReuse.incrementAndGet();
+        }
+
+        void addBytesOnWire(long bytes) {
+            mBytesOnWire.addAndGet(bytes);
+        }
+
+        void addBytesDecoded(long bytes) {
+            mBytesDecoded.addAndGet(bytes);
+        }
+
+        public long getRequests() {
+            return mRequests.get();
+        }
+
+        /**
+         * Returns the number of responses read to the end and handed back to the keep-alive
+         * pool, rather than having their connection closed.
+         */
+        public long getReleasedForReuse() {
+            return mReleasedForReuse.get();
+        }
+
+        /**
+         * Returns the body bytes received, before gzip decoding.
+         */
+        public long getBytesOnWire() {
+            return mBytesOnWire.get();
+        }
+
+        public long getBytesDecoded() {
+            return mBytesDecoded.get();
+        }
+
+        @Override
+        public String toString() {
+            return getRequests() + " requests, " + getReleasedForReuse() + " reusable, "
+                    + getBytesOnWire() + " bytes on wire, " + getBytesDecoded() + " bytes decoded";
+        }
+    }
+
+    public HostStats forHost(String host) {
+        HostStats stats = mHosts.get(host);
+        if (stats == null) {
+            HostStats newStats = new HostStats();
+            stats = mHosts.putIfAbsent(host, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+
+        return stats;
+    }
+
+    public Map<String, HostStats> getHosts() {
+        return new TreeMap<>(mHosts);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, HostStats> entry : getHosts().entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,216 @@
+package com.tragicfruit.twitcast.database;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HttpTransport on top of HttpURLConnection, which keeps connections alive between requests to
+ * the same host as long as each response is read to the end and closed rather than disconnected.
+ *
+ * Gzip is requested explicitly and decoded here, as HttpURLConnection only hides the encoding
+ * when it adds the header itself, and then the compressed size can't be counted.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+    // leftover body drained on close to keep the connection, any more and it's cheaper to drop it
+    private static final int MAX_DRAIN_BYTES = BufferPool.BUFFER_SIZE;
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    private final TransportStats mStats = new TransportStats();
+
+    public UrlConnectionTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public HttpResponse get(String urlSpec, Map<String, String> headers) throws IOException {
+        URL url = new URL(urlSpec);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        TransportStats.HostStats stats = mStats.forHost(url.getHost());
+        stats.addRequest();
+
+        try {
+            int code = connection.getResponseCode();
+            return new UrlConnectionResponse(connection, code, stats);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public TransportStats getStats() {
+        return mStats;
+    }
+
+    private static class UrlConnectionResponse extends HttpResponse {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final TransportStats.HostStats mStats;
+        private final boolean mGzipped;
+
+        private CountingInputStream mWireStream;
+        private InputStream mBody;
+        private boolean mClosed;
+
+        UrlConnectionResponse(HttpURLConnection connection, int code, TransportStats.HostStats stats) {
+            mConnection = connection;
+            mCode = code;
+            mStats = stats;
+            mGzipped = "gzip".equalsIgnoreCase(connection.getHeaderField("Content-Encoding"));
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+
+        @Override
+        public String getMessage() {
+            try {
+                return mConnection.getResponseMessage();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            // the header gives the compressed length for a gzipped body
+            return mGzipped ? -1 : mConnection.getContentLength();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                mBody = openWireStream();
+                if (mGzipped) {
+                    mBody = new CountingInputStream(new GZIPInputStream(mBody), mStats, false, true);
+                }
+            }
+
+            return mBody;
+        }
+
+        private CountingInputStream openWireStream() throws IOException {
+            if (mWireStream == null) {
+                InputStream in = mCode < HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getInputStream()
+                        : mConnection.getErrorStream();
+                if (in == null) {
+                    throw new IOException("No response body");
+                }
+                mWireStream = new CountingInputStream(in, mStats, true, !mGzipped);
+            }
+
+            return mWireStream;
+        }
+
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            try {
+                if (drainWireStream()) {
+                    mWireStream.close();
+                    mStats.addReleasedForReuse();
+                    return;
+                }
+            } catch (IOException e) {
+                // fall through and drop the connection
+            }
+
+            mConnection.disconnect();
+        }
+
+        /**
+         * Returns true if the body has been read to the end.
+         */
+        private boolean drainWireStream() throws IOException {
+            CountingInputStream in = openWireStream();
+            if (in.isAtEnd()) {
+                return true;
+            }
+
+            byte[] buffer = BufferPool.acquire();
+            try {
+                int drained = 0;
+                int bytesRead;
+                while (drained <= MAX_DRAIN_BYTES && (bytesRead = in.read(buffer)) != -1) {
+                    drained += bytesRead;
+                }
+                return in.isAtEnd();
+            } finally {
+                BufferPool.release(buffer);
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final TransportStats.HostStats mStats;
+        private final boolean mCountWire;
+        private final boolean mCountDecoded;
+        private boolean mAtEnd;
+
+        CountingInputStream(InputStream in, TransportStats.HostStats stats, boolean countWire,
+                            boolean countDecoded) {
+            super(in);
+            mStats = stats;
+            mCountWire = countWire;
+            mCountDecoded = countDecoded;
+        }
+
+        boolean isAtEnd() {
+            return mAtEnd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            count(b == -1 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int bytesRead = super.read(buffer, offset, count);
+            count(bytesRead);
+            return bytesRead;
+        }
+
+        private void count(int bytesRead) {
+            if (bytesRead == -1) {
+                mAtEnd = true;
+                return;
+            }
+
+            if (mCountWire) {
+                mStats.addBytesOnWire(bytesRead);
+            }
+            if (mCountDecoded) {
+                mStats.addBytesDecoded(bytesRead);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.episode.StreamQuality;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Attaches the URLs from a video feed to the episodes built from the audio feed, matching items
+ * on their normalised title. Feeds can drift apart in order and content, so nothing is assumed
+ * about item positions.
+ */
+public class VideoFeedMerger {
+    private final Map<String, Episode> mEpisodesByTitle;
+
+    public VideoFeedMerger(List<Episode> episodeList) {
+        mEpisodesByTitle = new HashMap<>(episodeList.size() * 2);
+        for (Episode episode : episodeList) {
+            String key = normaliseTitle(episode.getTitle());
+
+            // feeds are newest first, so keep the newest of any duplicate titles
+            if (!mEpisodesByTitle.containsKey(key)) {
+                mEpisodesByTitle.put(key, episode);
+            }
+        }
+    }
+
+    /**
+     * Copies the feed type's URL from each video item onto the matching episode.
+     *
+     * @return the number of video items with no matching episode
+     */
+    public int merge(List<Episode> videoList, StreamQuality feedType) {
+        int unmatched = 0;
+        for (Episode videoEpisode : videoList) {
+            Episode episode = mEpisodesByTitle.get(normaliseTitle(videoEpisode.getTitle()));
+            if (episode == null) {
+                unmatched++;
+                continue;
+            }
+
+            switch (feedType) {
+                case VIDEO_SMALL:
+                    if (episode.getVideoSmallUrl() == null) {
+                        episode.setVideoSmallUrl(videoEpisode.getVideoSmallUrl());
+                    }
+                    break;
+                case VIDEO_LARGE:
+                    if (episode.getVideoLargeUrl() == null) {
+                        episode.setVideoLargeUrl(videoEpisode.getVideoLargeUrl());
+                    }
+                    break;
+                case VIDEO_HD:
+                    if (episode.getVideoHdUrl() == null) {
+                        episode.setVideoHdUrl(videoEpisode.getVideoHdUrl());
+                    }
+                    break;
+            }
+        }
+
+        return unmatched;
+    }
+
+    static String normaliseTitle(String title) {
+        StringBuilder builder = new StringBuilder(title.length());
+        boolean lastWasSpace = true; // drops leading whitespace
+
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (!lastWasSpace) {
+                    builder.append(' ');
+                    lastWasSpace = true;
+                }
+            } else {
+                builder.append(c);
+                lastWasSpace = false;
+            }
+        }
+
+        int length = builder.length();
+        if (length > 0 && builder.charAt(length - 1) == ' ') {
+            builder.setLength(length - 1);
+        }
+
+        return builder.toString().toLowerCase(Locale.US);
+    }
+}
@@ -1,12 +1,9 @@
 package com.tragicfruit.twitcast.episode;
 
-import android.text.format.DateFormat;
-
 import com.tragicfruit.twitcast.show.Show;
+import com.tragicfruit.twitcast.utils.DayBuckets;
 
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
 
 /**
  * Created by Jeremy on 29/02/2016.
@@ -21,7 +18,9 @@ public class Episode {
     private String mVideoSmallUrl;
     private String mAudioUrl;
     private String mRunningTime;
+    private int mDuration = -1;
     private Show mShow;
+    private EpisodeDisplay mDisplay;
 
     public String getTitle() {
         return mTitle;
@@ -29,6 +28,7 @@ public class Episode {
 
     public void setTitle(String title) {
         mTitle = title;
+        mDisplay = null;
     }
 
     public Date getPublicationDate() {
@@ -37,59 +37,11 @@ public class Episode {
 
     public void setPublicationDate(Date publicationDate) {
         mPublicationDate = publicationDate;
+        mDisplay = null;
     }
 
     public String getDisplayDate() {
-        // today
-        Calendar calendar = new GregorianCalendar();
-
-        // midnight today
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-
-        if (mPublicationDate.after(calendar.getTime())) {
-            return "Today";
-        }
-
-        // midnight yesterday
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        if (mPublicationDate.after(calendar.getTime())) {
-            return "Yesterday";
-        }
-
-        // midnight 2 days ago
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        if (mPublicationDate.after(calendar.getTime())) {
-            return "2 days ago";
-        }
-
-        // midnight 3 days ago
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        if (mPublicationDate.after(calendar.getTime())) {
-            return "3 days ago";
-        }
-
-        // midnight 4 days ago
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        if (mPublicationDate.after(calendar.getTime())) {
-            return "4 days ago";
-        }
-
-        // midnight 5 days ago
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        if (mPublicationDate.after(calendar.getTime())) {
-            return "5 days ago";
-        }
-
-        // midnight 6 days ago
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        if (mPublicationDate.after(calendar.getTime())) {
-            return "6 days ago";
-        }
-
-        return DateFormat.format("MMMM d", mPublicationDate).toString();
+        return new DayBuckets().getLabel(getDisplay().getDay());
     }
 
     public String getSubtitle() {
@@ -146,6 +98,35 @@ public class Episode {
 
     public void setRunningTime(String runningTime) {
         mRunningTime = runningTime;
+        mDisplay = null;
+    }
+
+    /**
+     * Returns the running time in seconds, or -1 if not known, e.g. for episodes saved before
+     * durations were.
+     */
+    public int getDuration() {
+        return mDuration;
+    }
+
+    public void setDuration(int duration) {
+        mDuration = duration;
+        mDisplay = null;
+    }
+
+    public String getUrl(StreamQuality quality) {
+        switch (quality) {
+            case AUDIO:
+                return mAudioUrl;
+            case VIDEO_SMALL:
+                return mVideoSmallUrl;
+            case VIDEO_LARGE:
+                return mVideoLargeUrl;
+            case VIDEO_HD:
+                return mVideoHdUrl;
+            default:
+                return null;
+        }
     }
 
     public Show getShow() {
@@ -154,10 +135,24 @@ public class Episode {
 
     public void setShow(Show show) {
         mShow = show;
+        mDisplay = null;
+    }
+
+    /**
+     * Returns what is shown for the episode, built on first use. Call it as the episode is
+     * loaded, in the background, so binding it later costs nothing.
+     */
+    public EpisodeDisplay getDisplay() {
+        EpisodeDisplay display = mDisplay;
+        if (display == null) {
+            display = new EpisodeDisplay(this);
+            mDisplay = display;
+        }
+        return display;
     }
 
     public String getShortTitle() {
-        return mTitle.replace(mShow.getTitle(), mShow.getShortCode());
+        return getDisplay().getShortTitle();
     }
 
     public void cleanTitle() {
@@ -172,6 +167,27 @@ public class Episode {
         }
 
         mTitle = mShow.getTitle() + " " + mTitle.substring(indexOfFirstDigit);
+        mDisplay = null;
+    }
+
+    /**
+     * Returns a new episode with the same fields, for a caller that is going to change it.
+     */
+    public Episode copy() {
+        Episode copy = new Episode();
+        copy.mTitle = mTitle;
+        copy.mPublicationDate = mPublicationDate == null ? null : new Date(mPublicationDate.getTime());
+        copy.mSubtitle = mSubtitle;
+        copy.mShowNotes = mShowNotes;
+        copy.mVideoHdUrl = mVideoHdUrl;
+        copy.mVideoLargeUrl = mVideoLargeUrl;
+        copy.mVideoSmallUrl = mVideoSmallUrl;
+        copy.mAudioUrl = mAudioUrl;
+        copy.mRunningTime = mRunningTime;
+        copy.mDuration = mDuration;
+        copy.mShow = mShow;
+        copy.mDisplay = mDisplay;
+        return copy;
     }
 
     @Override
@@ -184,4 +200,9 @@ public class Episode {
             return false;
         }
     }
+
+    @Override
+    public int hashCode() {
+        return mTitle.hashCode();
+    }
 }
@@ -0,0 +1,30 @@
+package com.tragicfruit.twitcast.episode;
+
+/**
+ * The long text of an episode, kept apart from the episode lists and loaded when it is shown.
+ */
+public final class EpisodeDetails {
+    private final String mSubtitle;
+    private final String mShowNotes;
+
+    public EpisodeDetails(String subtitle, String showNotes) {
+        mSubtitle = subtitle;
+        mShowNotes = showNotes;
+    }
+
+    public String getSubtitle() {
+        return mSubtitle;
+    }
+
+    public String getShowNotes() {
+        return mShowNotes;
+    }
+
+    /**
+     * Returns the number of chars held, for sizing caches.
+     */
+    public int getLength() {
+        return (mSubtitle == null ? 0 : mSubtitle.length())
+                + (mShowNotes == null ? 0 : mShowNotes.length());
+    }
+}
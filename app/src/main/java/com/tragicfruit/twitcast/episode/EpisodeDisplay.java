@@ -0,0 +1,70 @@
+package com.tragicfruit.twitcast.episode;
+
+import android.content.Context;
+
+import com.tragicfruit.twitcast.R;
+import com.tragicfruit.twitcast.show.Show;
+import com.tragicfruit.twitcast.utils.DayBuckets;
+
+/**
+ * What the lists and cast metadata show for an episode, worked out once as the episode is loaded
+ * rather than on every bind. Immutable, so it can be built in the background and shared.
+ */
+public class EpisodeDisplay {
+    private final String mShortTitle;
+    private final int mDay;
+    private final int mDuration;
+    private final String mRunningTime;
+
+    EpisodeDisplay(Episode episode) {
+        Show show = episode.getShow();
+        if (show != null && show.getTitle() != null && show.getShortCode() != null) {
+            mShortTitle = episode.getTitle().replace(show.getTitle(), show.getShortCode());
+        } else {
+            mShortTitle = episode.getTitle();
+        }
+        mDay = DayBuckets.getDay(episode.getPublicationDate().getTime());
+        mDuration = episode.getDuration();
+        mRunningTime = episode.getRunningTime();
+    }
+
+    /**
+     * Returns the title with the show's title replaced by its short code, e.g. "TWiT 600".
+     */
+    public String getShortTitle() {
+        return mShortTitle;
+    }
+
+    /**
+     * Returns the local day the episode was published on, as numbered by DayBuckets.
+     */
+    public int getDay() {
+        return mDay;
+    }
+
+    /**
+     * Returns the running time in seconds, or -1 if not known.
+     */
+    public int getDuration() {
+        return mDuration;
+    }
+
+    public String getRunningTime() {
+        return mRunningTime;
+    }
+
+    /**
+     * Formats a running time in seconds as shown, e.g. "1 hr 23 min".
+     */
+    public static String formatRunningTime(Context context, int duration) {
+        int hours = duration / 3600;
+        int minutes = duration % 3600 / 60;
+        minutes += (int) Math.round((double) (duration % 60) / 60);
+
+        if (hours > 0) {
+            return context.getString(R.string.episode_running_time_long, hours, minutes);
+        } else {
+            return context.getString(R.string.episode_running_time_short, minutes);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.graphics.drawable.BitmapDrawable;
 import android.net.ConnectivityManager;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -15,6 +14,8 @@ import android.support.v4.app.FragmentManager;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.graphics.Palette;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -25,14 +26,16 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
-import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.tragicfruit.twitcast.R;
+import com.tragicfruit.twitcast.database.EpisodePager;
 import com.tragicfruit.twitcast.database.TWiTLab;
 import com.tragicfruit.twitcast.dialogs.ChooseQualityFragment;
 import com.tragicfruit.twitcast.DividerItemDecoration;
 import com.tragicfruit.twitcast.show.Show;
+import com.tragicfruit.twitcast.utils.CoverArtCache;
+import com.tragicfruit.twitcast.utils.DayBuckets;
 import com.tragicfruit.twitcast.utils.QueryPreferences;
 import com.tragicfruit.twitcast.database.TWiTFetcher;
 
@@ -48,17 +51,22 @@ public class EpisodeListFragment extends Fragment {
     private static final String DIALOG_CHOOSE_QUALITY = "choose_quality";
     private static final int REQUEST_QUALITY = 0;
 
+    private static final int TYPE_HEADER = 0;
+    private static final int TYPE_EPISODE = 1;
+    private static final int TYPE_LOADING = 2;
+
     private RecyclerView mRecyclerView;
-    private ImageView mCoverArtImageView;
-    private TextView mTitleTextView;
-    private TextView mDescriptionTextView;
-    private ProgressBar mLoadingProgressBar;
+    private ShowHeaderHolder mHeaderHolder; // beside the list, or null if it is the list's first row
     private SwipeRefreshLayout mSwipeRefresh;
 
     private Show mShow;
-    private List<Episode> mEpisodeList;
+    private EpisodePager mPager;
+    private EpisodeAdapter mAdapter;
+    private DayBuckets mDayBuckets = new DayBuckets();
     private TWiTLab mTWiTLab;
+    private boolean mLoadingMore;
     private FetchEpisodesTask mFetchEpisodesTask;
+    private LoadEpisodesTask mLoadEpisodesTask;
 
     private Callbacks mCallbacks;
 
@@ -98,21 +106,70 @@ public class EpisodeListFragment extends Fragment {
         setHasOptionsMenu(true);
 
         mTWiTLab = TWiTLab.get(getActivity());
-        int showId = getArguments().getInt(ARG_SHOW_ID);
-        mShow = mTWiTLab.getShow(showId);
-        mEpisodeList = mShow.getEpisodes();
+        // only waits if opened straight into this screen while the library is still loading,
+        // e.g. when restored after the process was killed
+        mTWiTLab.whenReady(TWiTLab.Stage.SHOWS, new Runnable() {
+            @Override
+            public void run() {
+                if (!isAdded()) {
+                    return;
+                }
+
+                int showId = getArguments().getInt(ARG_SHOW_ID);
+                mShow = mTWiTLab.getShow(showId);
+                if (mShow == null) {
+                    Log.e(TAG, "No show with id " + showId);
+                    getActivity().finish();
+                    return;
+                }
+                onShowLoaded();
+            }
+        });
+    }
+
+    private void onShowLoaded() {
+        // the pager waits in the background for the episodes to load
+        updateList();
+        mTWiTLab.addEpisodesSavedCallback(mUpdateList);
 
         AppCompatActivity activity = (AppCompatActivity) getActivity();
         if (activity.getSupportActionBar() != null) {
             activity.getSupportActionBar().setTitle(mShow.getTitle());
         }
 
+        if (getView() != null) {
+            bindShow();
+        }
+
         if (!mShow.hasLoadedAllEpisodes() && isNetworkAvailableAndConnected()) {
+            setLoadingMore(true);
             mFetchEpisodesTask = new FetchEpisodesTask();
             mFetchEpisodesTask.execute();
         }
     }
 
+    private final Runnable mUpdateList = new Runnable() {
+        @Override
+        public void run() {
+            updateList();
+        }
+    };
+
+    /**
+     * Reloads the list from the show's saved episodes.
+     */
+    private void updateList() {
+        if (mLoadEpisodesTask != null) {
+            mLoadEpisodesTask.cancel(false);
+        }
+        if (!mDayBuckets.isCurrent()) {
+            mDayBuckets = new DayBuckets();
+        }
+        mLoadEpisodesTask = new LoadEpisodesTask(mPager);
+        // not queued behind a refresh's network requests
+        mLoadEpisodesTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
     private boolean isNetworkAvailableAndConnected() {
         ConnectivityManager cm = (ConnectivityManager) getActivity().getSystemService(Context.CONNECTIVITY_SERVICE);
 
@@ -161,41 +218,18 @@ public class EpisodeListFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View v = inflater.inflate(R.layout.fragment_episode_list, container, false);
 
-        // set toolbar colour to dominant cover art colour
-        Bitmap bitmap = ((BitmapDrawable) mShow.getCoverArt()).getBitmap();
-        Bitmap bitmapTop = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight() * 2 / 3);
-        Palette palette = Palette.from(bitmapTop).generate();
-        int colour = palette.getDarkVibrantColor(0);
-        if (colour == 0)
-            colour = palette.getVibrantColor(0);
-        if (colour == 0)
-            colour = palette.getMutedColor(0);
-
-        mCallbacks.setToolbarColour(colour, getDarkerColour(colour));
+        // landscape shows the header beside the list rather than scrolling with it
+        mHeaderHolder = v.findViewById(R.id.show_cover_art) == null ? null : new ShowHeaderHolder(v);
 
         mRecyclerView = (RecyclerView) v.findViewById(R.id.fragment_episode_list_recycler_view);
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()) {
-            @Override
-            public boolean canScrollVertically() {
-                return false;
-            }
-        });
-        mRecyclerView.setAdapter(new EpisodeAdapter());
-        mRecyclerView.setFocusable(false); // to allow scroll view to start at the top
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        mAdapter = new EpisodeAdapter(mHeaderHolder == null);
+        mAdapter.setPager(mPager);
+        mRecyclerView.setAdapter(mAdapter);
         mRecyclerView.addItemDecoration(new DividerItemDecoration(getActivity(), LinearLayoutManager.VERTICAL));
 
-        mCoverArtImageView = (ImageView) v.findViewById(R.id.show_cover_art);
-        mCoverArtImageView.setImageDrawable(mShow.getCoverArt());
-
-        mTitleTextView = (TextView) v.findViewById(R.id.show_title);
-        mTitleTextView.setText(mShow.getTitle());
-
-        mDescriptionTextView = (TextView) v.findViewById(R.id.show_description);
-        mDescriptionTextView.setText(mShow.getDescription());
-
-        mLoadingProgressBar = (ProgressBar) v.findViewById(R.id.loading_more_episodes_progress_bar);
-        if (mShow.hasLoadedAllEpisodes() || !isNetworkAvailableAndConnected()) {
-            mLoadingProgressBar.setVisibility(View.GONE);
+        if (mShow != null) {
+            bindShow();
         }
 
         mSwipeRefresh = (SwipeRefreshLayout) v.findViewById(R.id.fragment_episode_list_swipe_refresh);
@@ -203,7 +237,9 @@ public class EpisodeListFragment extends Fragment {
         mSwipeRefresh.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
             @Override
             public void onRefresh() {
-                if (isNetworkAvailableAndConnected()) {
+                if (mShow == null) { // still loading
+                    mSwipeRefresh.setRefreshing(false);
+                } else if (isNetworkAvailableAndConnected()) {
                     mFetchEpisodesTask = new FetchEpisodesTask();
                     mFetchEpisodesTask.execute();
                 } else {
@@ -216,6 +252,72 @@ public class EpisodeListFragment extends Fragment {
         return v;
     }
 
+    private void bindShow() {
+        // usually in memory from the grid the show was picked from
+        CoverArtCache coverArtCache = CoverArtCache.get(getActivity());
+        String path = mShow.getCoverArtLocalPath();
+        Bitmap bitmap = coverArtCache.getCached(path, coverArtCache.getSize());
+        if (bitmap != null) {
+            setToolbarColour(bitmap);
+        } else if (path != null) {
+            coverArtCache.load(path, coverArtCache.getSize(), mCoverArtCallback);
+        }
+
+        bindHeader();
+    }
+
+    private final CoverArtCache.Callback mCoverArtCallback = new CoverArtCache.Callback() {
+        @Override
+        public void onCoverArtLoaded(String path, Bitmap bitmap) {
+            if (!isAdded() || getView() == null || bitmap == null) {
+                return;
+            }
+
+            setToolbarColour(bitmap);
+            bindHeader();
+        }
+    };
+
+    private void bindHeader() {
+        if (mHeaderHolder != null) {
+            mHeaderHolder.bindShow(mShow);
+        } else {
+            mAdapter.notifyItemChanged(0);
+        }
+    }
+
+    // the dominant colour of the cover art
+    private void setToolbarColour(Bitmap bitmap) {
+        Bitmap bitmapTop = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight() * 2 / 3);
+        Palette palette = Palette.from(bitmapTop).generate();
+        int colour = palette.getDarkVibrantColor(0);
+        if (colour == 0)
+            colour = palette.getVibrantColor(0);
+        if (colour == 0)
+            colour = palette.getMutedColor(0);
+
+        mCallbacks.setToolbarColour(colour, getDarkerColour(colour));
+    }
+
+    /**
+     * Shows or hides the progress row below the episodes.
+     */
+    private void setLoadingMore(boolean loadingMore) {
+        if (loadingMore == mLoadingMore) {
+            return;
+        }
+
+        mLoadingMore = loadingMore;
+        if (mAdapter != null) {
+            int position = mAdapter.getEpisodeOffset() + mAdapter.getEpisodeCount();
+            if (loadingMore) {
+                mAdapter.notifyItemInserted(position);
+            } else {
+                mAdapter.notifyItemRemoved(position);
+            }
+        }
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (resultCode != Activity.RESULT_OK) {
@@ -233,11 +335,19 @@ public class EpisodeListFragment extends Fragment {
     public void onDestroy() {
         super.onDestroy();
         if (mFetchEpisodesTask != null) {
-            mFetchEpisodesTask.cancel(false);
+            mFetchEpisodesTask.cancel(true);
+        }
+        if (mLoadEpisodesTask != null) {
+            mLoadEpisodesTask.cancel(false);
+        }
+        mTWiTLab.removeEpisodesSavedCallback(mUpdateList);
+        if (mPager != null) {
+            mPager.close();
         }
     }
 
-    private class EpisodeHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    private class EpisodeHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, TWiTLab.DetailsCallback {
         private Episode mEpisode;
         private TextView mTitleTextView;
         private TextView mDateTextView;
@@ -256,75 +366,280 @@ public class EpisodeListFragment extends Fragment {
 
         public void bindEpisode(Episode episode) {
             mEpisode = episode;
-            mTitleTextView.setText(episode.getShortTitle());
-            mRunningTimeTextView.setText(episode.getRunningTime());
-            mDescriptionTextView.setText(episode.getSubtitle());
-            mDateTextView.setText(episode.getDisplayDate());
+            EpisodeDisplay display = episode.getDisplay();
+            mTitleTextView.setText(display.getShortTitle());
+            mRunningTimeTextView.setText(display.getRunningTime());
+            mDateTextView.setText(mDayBuckets.getLabel(display.getDay()));
+
+            // subtitles are kept out of the episode lists, so fill in once loaded
+            EpisodeDetails details = mTWiTLab.getCachedEpisodeDetails(episode);
+            if (details != null) {
+                mDescriptionTextView.setText(details.getSubtitle());
+            } else {
+                mDescriptionTextView.setText(null);
+                mTWiTLab.loadEpisodeDetails(episode, this);
+            }
+        }
+
+        @Override
+        public void onDetailsLoaded(Episode episode, EpisodeDetails details) {
+            // the holder may have been rebound while loading
+            if (episode == mEpisode && details != null) {
+                mDescriptionTextView.setText(details.getSubtitle());
+            }
+        }
+
+        // until the episode's page loads
+        public void bindPlaceholder() {
+            mEpisode = null;
+            mTitleTextView.setText(null);
+            mRunningTimeTextView.setText(null);
+            mDescriptionTextView.setText(null);
+            mDateTextView.setText(null);
         }
 
         @Override
         public void onClick(View v) {
-            mCallbacks.playVideo(mEpisode, 0);
+            if (mEpisode != null) {
+                mCallbacks.playVideo(mEpisode, 0);
+            }
+        }
+    }
+
+    private class ShowHeaderHolder extends RecyclerView.ViewHolder {
+        private ImageView mCoverArtImageView;
+        private TextView mTitleTextView;
+        private TextView mDescriptionTextView;
+
+        public ShowHeaderHolder(View itemView) {
+            super(itemView);
+
+            mCoverArtImageView = (ImageView) itemView.findViewById(R.id.show_cover_art);
+            mTitleTextView = (TextView) itemView.findViewById(R.id.show_title);
+            mDescriptionTextView = (TextView) itemView.findViewById(R.id.show_description);
+        }
+
+        public void bindShow(Show show) {
+            if (show == null) { // still loading
+                mCoverArtImageView.setImageDrawable(null);
+                mTitleTextView.setText(null);
+                mDescriptionTextView.setText(null);
+                return;
+            }
+
+            // bound again once loaded, if it wasn't in memory
+            CoverArtCache coverArtCache = CoverArtCache.get(getActivity());
+            mCoverArtImageView.setImageBitmap(
+                    coverArtCache.getCached(show.getCoverArtLocalPath(), coverArtCache.getSize()));
+            mTitleTextView.setText(show.getTitle());
+            mDescriptionTextView.setText(show.getDescription());
         }
     }
 
-    private class EpisodeAdapter extends RecyclerView.Adapter<EpisodeHolder> {
+    /**
+     * The episodes, after the show's header in portrait and followed by a progress row while
+     * more are being fetched.
+     */
+    private class EpisodeAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        private final boolean mHasHeader;
+        private EpisodePager mEpisodes;
+
+        public EpisodeAdapter(boolean hasHeader) {
+            mHasHeader = hasHeader;
+        }
+
+        /**
+         * Swaps in a newer pager without notifying; the caller dispatches the changes.
+         */
+        public void setPager(EpisodePager pager) {
+            mEpisodes = pager;
+            if (pager == null) {
+                return;
+            }
+
+            // rows bound while their page loaded are bound again once it is in
+            pager.setListener(new EpisodePager.Listener() {
+                @Override
+                public void onEpisodesLoaded(int positionStart, int itemCount) {
+                    notifyItemRangeChanged(positionStart + getEpisodeOffset(), itemCount);
+                }
+            });
+        }
+
+        /**
+         * Applies changes worked out against the episodes alone.
+         */
+        public void dispatchUpdates(DiffUtil.DiffResult diff) {
+            final int offset = getEpisodeOffset();
+            diff.dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    notifyItemRangeInserted(position + offset, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    notifyItemRangeRemoved(position + offset, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    notifyItemMoved(fromPosition + offset, toPosition + offset);
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    notifyItemRangeChanged(position + offset, count, payload);
+                }
+            });
+        }
+
+        public int getEpisodeOffset() {
+            return mHasHeader ? 1 : 0;
+        }
+
+        public int getEpisodeCount() {
+            return mEpisodes == null ? 0 : mEpisodes.getCount();
+        }
 
         @Override
-        public EpisodeHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        public int getItemViewType(int position) {
+            if (mHasHeader && position == 0) {
+                return TYPE_HEADER;
+            }
+            return position - getEpisodeOffset() < getEpisodeCount() ? TYPE_EPISODE : TYPE_LOADING;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             LayoutInflater inflater = LayoutInflater.from(getActivity());
-            View view = inflater.inflate(R.layout.list_item_episode, parent, false);
-            return new EpisodeHolder(view);
+            switch (viewType) {
+                case TYPE_HEADER:
+                    return new ShowHeaderHolder(
+                            inflater.inflate(R.layout.list_item_show_header, parent, false));
+                case TYPE_LOADING:
+                    return new RecyclerView.ViewHolder(
+                            inflater.inflate(R.layout.list_item_loading, parent, false)) {};
+                default:
+                    return new EpisodeHolder(
+                            inflater.inflate(R.layout.list_item_episode, parent, false));
+            }
         }
 
         @Override
-        public void onBindViewHolder(EpisodeHolder holder, int position) {
-            Episode episode = mEpisodeList.get(position);
-            holder.bindEpisode(episode);
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            switch (getItemViewType(position)) {
+                case TYPE_HEADER:
+                    ((ShowHeaderHolder) holder).bindShow(mShow);
+                    break;
+                case TYPE_EPISODE:
+                    EpisodeHolder episodeHolder = (EpisodeHolder) holder;
+                    Episode episode = mEpisodes.getEpisode(position - getEpisodeOffset());
+                    if (episode != null) {
+                        episodeHolder.bindEpisode(episode);
+                    } else {
+                        episodeHolder.bindPlaceholder();
+                    }
+                    break;
+            }
         }
 
         @Override
         public int getItemCount() {
-            return mEpisodeList.size();
+            return getEpisodeOffset() + getEpisodeCount() + (mLoadingMore ? 1 : 0);
+        }
+    }
+
+    /**
+     * Loads the show's saved episodes and works out how the list changes, in the background, so
+     * only rows that changed are bound again.
+     */
+    private class LoadEpisodesTask extends AsyncTask<Void, Void, EpisodePager> {
+        private final EpisodePager mOldPager;
+        private DiffUtil.DiffResult mDiff;
+
+        public LoadEpisodesTask(EpisodePager oldPager) {
+            mOldPager = oldPager;
+        }
+
+        @Override
+        protected EpisodePager doInBackground(Void... params) {
+            EpisodePager pager = mTWiTLab.openEpisodePager(mShow);
+            RowDiffCallback.Rows oldRows = mOldPager == null
+                    ? RowDiffCallback.Rows.EMPTY : RowDiffCallback.Rows.of(mOldPager);
+            mDiff = DiffUtil.calculateDiff(
+                    new RowDiffCallback(oldRows, RowDiffCallback.Rows.of(pager)), false);
+            return pager;
+        }
+
+        @Override
+        protected void onPostExecute(EpisodePager pager) {
+            if (isCancelled()) {
+                return;
+            }
+
+            if (mPager != null) {
+                mPager.close();
+            }
+            mPager = pager;
+            if (mAdapter != null) {
+                mAdapter.setPager(mPager);
+                mAdapter.dispatchUpdates(mDiff);
+            }
         }
     }
 
-    private class FetchEpisodesTask extends AsyncTask<Void, Void, List<Episode>> {
+    private class FetchEpisodesTask extends AsyncTask<Void, Void, Boolean> {
+        private TWiTFetcher mFetcher;
 
         @Override
-        protected List<Episode> doInBackground(Void... params) {
+        protected Boolean doInBackground(Void... params) {
+            List<Episode> episodeList;
             try {
-                return new TWiTFetcher(getActivity()).fetchEpisodes(mShow);
+                mFetcher = new TWiTFetcher(getActivity());
+                episodeList = mFetcher.fetchEpisodes(mShow);
             } catch (IOException e) {
                 Log.e(TAG, "Error fetching episodes", e);
                 return null;
             }
+
+            if (episodeList == null) { // couldn't fetch the audio feed
+                return null;
+            }
+
+            if (isCancelled()) {
+                return false;
+            }
+
+            // builds and publishes the new episodes off the main thread
+            return mTWiTLab.addEpisodes(episodeList, mShow);
         }
 
         @Override
-        protected void onPostExecute(List<Episode> episodeList) {
+        protected void onPostExecute(Boolean newShows) {
             if (isCancelled()) {
                 return;
             }
 
-            mLoadingProgressBar.setVisibility(View.GONE);
+            setLoadingMore(false);
             mSwipeRefresh.setRefreshing(false);
 
-            if (episodeList == null) {
+            if (newShows == null) {
                 mCallbacks.showNoConnectionSnackbar();
                 return;
             }
 
-            boolean newShows = mTWiTLab.addEpisodes(episodeList, mShow);
             mShow.setLoadedAllEpisodes(true);
 
+            // the list reloads once the new episodes are saved
             if (newShows) {
                 getActivity().setResult(Activity.RESULT_OK);
-                mRecyclerView.getAdapter().notifyDataSetChanged();
 
                 mTWiTLab.saveShows();
                 mTWiTLab.saveEpisodes();
+                mTWiTLab.flush();
             }
+            mFetcher.commitValidators();
         }
     }
 }
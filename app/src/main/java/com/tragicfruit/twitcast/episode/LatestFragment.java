@@ -3,6 +3,7 @@ package com.tragicfruit.twitcast.episode;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.ConnectivityManager;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -10,6 +11,7 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.widget.SwipeRefreshLayout;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -24,15 +26,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.tragicfruit.twitcast.R;
+import com.tragicfruit.twitcast.database.EpisodePager;
 import com.tragicfruit.twitcast.database.TWiTLab;
 import com.tragicfruit.twitcast.dialogs.ChooseQualityFragment;
 import com.tragicfruit.twitcast.DividerItemDecoration;
+import com.tragicfruit.twitcast.utils.CoverArtCache;
+import com.tragicfruit.twitcast.utils.DayBuckets;
 import com.tragicfruit.twitcast.utils.QueryPreferences;
 import com.tragicfruit.twitcast.database.TWiTFetcher;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 
 import jp.wasabeef.recyclerview.animators.adapters.AlphaInAnimationAdapter;
@@ -45,10 +49,23 @@ public class LatestFragment extends Fragment {
     private static final String DIALOG_CHOOSE_QUALITY = "choose_quality";
     private static final int REQUEST_QUALITY = 0;
 
+    // above any episode row id, which is a title hash
+    private static final long HEADER_ROW_IDS = 1L << 32;
+
     private TWiTLab mTWiTLab;
     private FetchEpisodesTask mFetchEpisodesTask;
+    private LoadEpisodesTask mLoadEpisodesTask;
     private boolean mLandscape;
 
+    // the list as shown, kept across view recreation, with sections for either layout
+    private EpisodePager mPager;
+    private SectionedList mPortraitList;
+    private SectionedList mLandscapeList;
+    private DayBuckets mDayBuckets = new DayBuckets();
+
+    private EpisodeAdapter mEpisodeAdapter;
+    private SectionedRecyclerViewAdapter mSectionedAdapter;
+
     private RecyclerView mRecyclerView;
     private SwipeRefreshLayout mSwipeRefresh;
     private Callbacks mCallbacks;
@@ -70,8 +87,27 @@ public class LatestFragment extends Fragment {
         setHasOptionsMenu(true);
 
         mTWiTLab = TWiTLab.get(getActivity());
+
+        // the list fills in once episodes load, and rebinds once all cover art has
+        mTWiTLab.whenReady(TWiTLab.Stage.EPISODES, mUpdateList);
+        mTWiTLab.whenReady(TWiTLab.Stage.ALL_COVER_ART, new Runnable() {
+            @Override
+            public void run() {
+                if (mSectionedAdapter != null) {
+                    mSectionedAdapter.notifyItemRangeChanged(0, mSectionedAdapter.getItemCount());
+                }
+            }
+        });
+        mTWiTLab.addEpisodesSavedCallback(mUpdateList);
     }
 
+    private final Runnable mUpdateList = new Runnable() {
+        @Override
+        public void run() {
+            updateList();
+        }
+    };
+
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -113,20 +149,21 @@ public class LatestFragment extends Fragment {
     }
 
     private void setupAdapter() {
-        if (isAdded()) {
-            // This is the code to provide a sectioned list
-            List<SectionedRecyclerViewAdapter.Section> sections = new ArrayList<>();
-            addSections(sections);
+        if (isAdded() && mRecyclerView != null) {
+            mEpisodeAdapter = new EpisodeAdapter();
+            mEpisodeAdapter.setPager(mPager);
 
-            //Add your adapter to the sectionAdapter
-            SectionedRecyclerViewAdapter.Section[] dummy = new SectionedRecyclerViewAdapter.Section[sections.size()];
-            SectionedRecyclerViewAdapter mSectionedAdapter = new SectionedRecyclerViewAdapter(
+            // This is the code to provide a sectioned list
+            mSectionedAdapter = new SectionedRecyclerViewAdapter(
                     getActivity(),
                     R.layout.section_recycler_view,
                     R.id.section_text,
-                    new EpisodeAdapter(mTWiTLab.getEpisodes())
+                    mEpisodeAdapter
             );
-            mSectionedAdapter.setSections(sections.toArray(dummy));
+            SectionedList list = getShownList();
+            if (list != null) {
+                mSectionedAdapter.setSections(list.mSections);
+            }
 
             // Add sectioned adapter to animation adapter
             AlphaInAnimationAdapter animationAdapter = new AlphaInAnimationAdapter(mSectionedAdapter);
@@ -134,65 +171,103 @@ public class LatestFragment extends Fragment {
         }
     }
 
-    private void addSections(List<SectionedRecyclerViewAdapter.Section> sections) {
-        List<Episode> episodeList = mTWiTLab.getEpisodes();
+    private SectionedList getShownList() {
+        return mLandscape ? mLandscapeList : mPortraitList;
+    }
+
+    /**
+     * A pager's sections for one layout, and the rows they make for diffing. Both layouts are
+     * built in the background, so rotating doesn't split the list into days on the main thread.
+     */
+    private static class SectionedList {
+        final SectionedRecyclerViewAdapter.Section[] mSections;
+        final RowDiffCallback.Rows mRows;
+
+        SectionedList(EpisodePager pager, boolean landscape, DayBuckets dayBuckets) {
+            List<SectionedRecyclerViewAdapter.Section> sections = new ArrayList<>();
+            addSections(sections, pager, landscape, dayBuckets);
+            mSections = sections.toArray(new SectionedRecyclerViewAdapter.Section[sections.size()]);
+            mRows = getRows(pager, mSections);
+        }
+    }
+
+    /**
+     * Returns the rows of the sectioned list, headers included, for diffing.
+     */
+    static RowDiffCallback.Rows getRows(EpisodePager pager,
+                                        SectionedRecyclerViewAdapter.Section[] sections) {
+        RowDiffCallback.Rows rows = new RowDiffCallback.Rows(pager.getCount() + sections.length);
+        int row = 0;
+        int sectionIndex = 0;
+
+        // sections are in order of first position, and a last one may follow every episode
+        for (int position = 0; position <= pager.getCount(); position++) {
+            while (sectionIndex < sections.length && sections[sectionIndex].firstPosition == position) {
+                int titleHash = sections[sectionIndex].title.toString().hashCode();
+                rows.set(row++, HEADER_ROW_IDS | (titleHash & 0xffffffffL), titleHash);
+                sectionIndex++;
+            }
+
+            if (position < pager.getCount()) {
+                rows.set(row++, pager.getKey(position), pager.getContentHash(position));
+            }
+        }
+
+        return rows;
+    }
+
+    private static void addSections(List<SectionedRecyclerViewAdapter.Section> sections,
+                                    EpisodePager pager, boolean landscape, DayBuckets dayBuckets) {
+        int episodeCount = pager.getCount();
 
-        if (episodeList.size() == 0) {
+        if (episodeCount == 0) {
             return;
         }
 
         int startingIndex = 0;
-        Episode controlEpisode = episodeList.get(0);
-        String sectionTitle = controlEpisode.getDisplayDate();
+        int controlDay = pager.getDay(0);
 
-        if (episodeList.size() == 1) {
-            sections.add(new SectionedRecyclerViewAdapter.Section(startingIndex, sectionTitle));
+        if (episodeCount == 1) {
+            sections.add(new SectionedRecyclerViewAdapter.Section(startingIndex,
+                    dayBuckets.getLabel(controlDay)));
             return;
         }
 
         boolean needsExtraSection = false; // only for landscape layout
-        for (int i = 1; i < episodeList.size(); i++) {
-            Episode currentEpisode = episodeList.get(i);
+        for (int i = 1; i < episodeCount; i++) {
+            int currentDay = pager.getDay(i);
 
             // different day or last item
-            if (!isOnSameDay(controlEpisode, currentEpisode)) {
-                addSection(sections, startingIndex, sectionTitle, needsExtraSection);
+            if (currentDay != controlDay) {
+                addSection(sections, startingIndex, dayBuckets.getLabel(controlDay),
+                        needsExtraSection, landscape);
                 needsExtraSection = (i - startingIndex) % 2 != 0;
 
                 // reset section
                 startingIndex = i;
-                controlEpisode = currentEpisode;
-                sectionTitle = controlEpisode.getDisplayDate();
+                controlDay = currentDay;
             }
         }
 
         // add last section
-        addSection(sections, startingIndex, sectionTitle, needsExtraSection);
-        if (mLandscape && (episodeList.size() - startingIndex) % 2 != 0) {
-            sections.add(new SectionedRecyclerViewAdapter.Section(episodeList.size(), ""));
+        addSection(sections, startingIndex, dayBuckets.getLabel(controlDay), needsExtraSection,
+                landscape);
+        if (landscape && (episodeCount - startingIndex) % 2 != 0) {
+            sections.add(new SectionedRecyclerViewAdapter.Section(episodeCount, ""));
         }
     }
 
-    private void addSection(List<SectionedRecyclerViewAdapter.Section> sections, int index,
-                            String sectionTitle, boolean needsExtraSection) {
-        if (mLandscape && needsExtraSection) {
+    private static void addSection(List<SectionedRecyclerViewAdapter.Section> sections, int index,
+                                   String sectionTitle, boolean needsExtraSection, boolean landscape) {
+        if (landscape && needsExtraSection) {
             sections.add(new SectionedRecyclerViewAdapter.Section(index, ""));
         }
         sections.add(new SectionedRecyclerViewAdapter.Section(index, sectionTitle));
-        if (mLandscape) {
+        if (landscape) {
             sections.add(new SectionedRecyclerViewAdapter.Section(index, ""));
         }
     }
 
-    private boolean isOnSameDay(Episode episode1, Episode episode2) {
-        Calendar cal1 = Calendar.getInstance();
-        Calendar cal2 = Calendar.getInstance();
-        cal1.setTime(episode1.getPublicationDate());
-        cal2.setTime(episode2.getPublicationDate());
-        return cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR) &&
-                cal1.get(Calendar.DAY_OF_YEAR) == cal2.get(Calendar.DAY_OF_YEAR);
-    }
-
     private boolean isNetworkAvailableAndConnected() {
         ConnectivityManager cm = (ConnectivityManager) getActivity().getSystemService(Context.CONNECTIVITY_SERVICE);
 
@@ -235,9 +310,24 @@ public class LatestFragment extends Fragment {
         }
     }
 
+    /**
+     * Reloads the list from the saved episodes.
+     */
     public void updateList() {
         Log.d(TAG, "Updating latest episode list");
-        setupAdapter();
+        if (mLoadEpisodesTask != null) {
+            mLoadEpisodesTask.cancel(false);
+        }
+        // labels like "Today" move on at midnight
+        if (!mDayBuckets.isCurrent()) {
+            mDayBuckets = new DayBuckets();
+        }
+        SectionedList shownList = getShownList();
+        mLoadEpisodesTask = new LoadEpisodesTask(
+                shownList == null ? RowDiffCallback.Rows.EMPTY : shownList.mRows, mLandscape,
+                mDayBuckets);
+        // not queued behind a refresh's network requests
+        mLoadEpisodesTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     @Override
@@ -256,11 +346,19 @@ public class LatestFragment extends Fragment {
     public void onDestroy() {
         super.onDestroy();
         if (mFetchEpisodesTask != null) {
-            mFetchEpisodesTask.cancel(false);
+            mFetchEpisodesTask.cancel(true);
+        }
+        if (mLoadEpisodesTask != null) {
+            mLoadEpisodesTask.cancel(false);
+        }
+        mTWiTLab.removeEpisodesSavedCallback(mUpdateList);
+        if (mPager != null) {
+            mPager.close();
         }
     }
 
-    private class EpisodeHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    private class EpisodeHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, CoverArtCache.Callback {
         private Episode mEpisode;
         private TextView mShowTitleTextView;
         private TextView mNumberTitleTextView;
@@ -279,23 +377,67 @@ public class LatestFragment extends Fragment {
 
         public void bindEpisode(Episode episode) {
             mEpisode = episode;
-            mCoverArtImageView.setImageDrawable(episode.getShow().getCoverArt());
+            EpisodeDisplay display = episode.getDisplay();
+            bindCoverArt(episode.getShow().getCoverArtLocalPath());
             mShowTitleTextView.setText(episode.getShow().getTitle());
-            mNumberTitleTextView.setText(episode.getShortTitle());
-            mRunningTimeTextView.setText(episode.getRunningTime());
+            mNumberTitleTextView.setText(display.getShortTitle());
+            mRunningTimeTextView.setText(display.getRunningTime());
+        }
+
+        // shares the grid's bitmap of the show, which the image view scales down
+        private void bindCoverArt(String path) {
+            CoverArtCache cache = CoverArtCache.get(getActivity());
+            Bitmap bitmap = cache.getCached(path, cache.getSize());
+            mCoverArtImageView.setImageBitmap(bitmap);
+            if (bitmap == null && path != null) {
+                cache.load(path, cache.getSize(), this);
+            }
+        }
+
+        @Override
+        public void onCoverArtLoaded(String path, Bitmap bitmap) {
+            // the holder may have been rebound while the image was decoding
+            if (mEpisode != null && path.equals(mEpisode.getShow().getCoverArtLocalPath())) {
+                mCoverArtImageView.setImageBitmap(bitmap);
+            }
+        }
+
+        // until the episode's page loads
+        public void bindPlaceholder() {
+            mEpisode = null;
+            mCoverArtImageView.setImageDrawable(null);
+            mShowTitleTextView.setText(null);
+            mNumberTitleTextView.setText(null);
+            mRunningTimeTextView.setText(null);
         }
 
         @Override
         public void onClick(View v) {
-            mCallbacks.playVideo(mEpisode, 0);
+            if (mEpisode != null) {
+                mCallbacks.playVideo(mEpisode, 0);
+            }
         }
     }
 
     private class EpisodeAdapter extends RecyclerView.Adapter<EpisodeHolder> {
-        private List<Episode> mEpisodes;
+        private EpisodePager mEpisodes;
+
+        /**
+         * Swaps in a newer pager without notifying; the caller dispatches the changes.
+         */
+        public void setPager(EpisodePager pager) {
+            mEpisodes = pager;
+            if (pager == null) {
+                return;
+            }
 
-        public EpisodeAdapter(List<Episode> episodeList) {
-            mEpisodes = episodeList;
+            // rows bound while their page loaded are bound again once it is in
+            pager.setListener(new EpisodePager.Listener() {
+                @Override
+                public void onEpisodesLoaded(int positionStart, int itemCount) {
+                    notifyItemRangeChanged(positionStart, itemCount);
+                }
+            });
         }
 
         @Override
@@ -307,48 +449,131 @@ public class LatestFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(EpisodeHolder holder, int position) {
-            Episode episode = mEpisodes.get(position);
-            holder.bindEpisode(episode);
+            Episode episode = mEpisodes.getEpisode(position);
+            if (episode != null) {
+                holder.bindEpisode(episode);
+            } else {
+                holder.bindPlaceholder();
+            }
         }
 
         @Override
         public int getItemCount() {
-            return mEpisodes.size();
+            return mEpisodes == null ? 0 : mEpisodes.getCount();
         }
     }
 
-    private class FetchEpisodesTask extends AsyncTask<Void, Void, List<Episode>> {
+    /**
+     * Loads the saved episodes and works out how the list changes, in the background, so only
+     * rows that changed are bound again.
+     */
+    private class LoadEpisodesTask extends AsyncTask<Void, Void, Boolean> {
+        private final RowDiffCallback.Rows mOldRows;
+        private final boolean mLoadLandscape;
+        private final DayBuckets mLoadDayBuckets;
+
+        private EpisodePager mNewPager;
+        private SectionedList mNewPortraitList;
+        private SectionedList mNewLandscapeList;
+        private DiffUtil.DiffResult mDiff;
+
+        public LoadEpisodesTask(RowDiffCallback.Rows oldRows, boolean landscape,
+                                DayBuckets dayBuckets) {
+            mOldRows = oldRows;
+            mLoadLandscape = landscape;
+            mLoadDayBuckets = dayBuckets;
+        }
 
         @Override
-        protected List<Episode> doInBackground(Void... params) {
+        protected Boolean doInBackground(Void... params) {
+            mTWiTLab.awaitReady(TWiTLab.Stage.EPISODES);
+            mNewPager = mTWiTLab.openEpisodePager(null);
+
+            long startTime = System.currentTimeMillis();
+            mNewPortraitList = new SectionedList(mNewPager, false, mLoadDayBuckets);
+            mNewLandscapeList = new SectionedList(mNewPager, true, mLoadDayBuckets);
+            RowDiffCallback.Rows newRows = mLoadLandscape
+                    ? mNewLandscapeList.mRows : mNewPortraitList.mRows;
+            long sectionedTime = System.currentTimeMillis();
+
+            mDiff = DiffUtil.calculateDiff(new RowDiffCallback(mOldRows, newRows), false);
+            Log.d(TAG, "Sectioned " + mNewPager.getCount() + " episodes in "
+                    + (sectionedTime - startTime) + "ms, diffed " + mOldRows.size() + " to "
+                    + newRows.size() + " rows in " + (System.currentTimeMillis() - sectionedTime)
+                    + "ms");
+            return true;
+        }
+
+        @Override
+        protected void onPostExecute(Boolean loaded) {
+            if (isCancelled()) {
+                return;
+            }
+
+            if (mPager != null) {
+                mPager.close();
+            }
+            mPager = mNewPager;
+            mPortraitList = mNewPortraitList;
+            mLandscapeList = mNewLandscapeList;
+
+            // the diff is from what the adapter shows, unless the view was rebuilt since
+            if (mSectionedAdapter != null && mLandscape == mLoadLandscape) {
+                mEpisodeAdapter.setPager(mPager);
+                mSectionedAdapter.replaceSections(getShownList().mSections);
+                mDiff.dispatchUpdatesTo(mSectionedAdapter);
+            } else {
+                setupAdapter();
+            }
+        }
+    }
+
+    private class FetchEpisodesTask extends AsyncTask<Void, Void, Boolean> {
+        private TWiTFetcher mFetcher;
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            List<Episode> episodeList;
             try {
-                return new TWiTFetcher(getActivity()).fetchAllEpisodes();
+                mFetcher = new TWiTFetcher(getActivity());
+                episodeList = mFetcher.fetchAllEpisodes();
             } catch (IOException e) {
                 Log.e(TAG, "Error fetching episodes", e);
                 return null;
             }
+
+            if (episodeList == null) { // couldn't fetch the audio feed
+                return null;
+            }
+
+            if (isCancelled()) {
+                return false;
+            }
+
+            // builds and publishes the new episodes off the main thread
+            return mTWiTLab.addEpisodes(episodeList);
         }
 
         @Override
-        protected void onPostExecute(List<Episode> episodeList) {
+        protected void onPostExecute(Boolean newShows) {
             if (isCancelled()) {
                 return;
             }
 
             mSwipeRefresh.setRefreshing(false);
 
-            if (episodeList == null) {
+            if (newShows == null) {
                 mCallbacks.showNoConnectionSnackbar();
                 return;
             }
 
-            boolean newShows = mTWiTLab.addEpisodes(episodeList);
+            // the list reloads once the new episodes are saved
             if (newShows) {
-                setupAdapter();
-
                 mTWiTLab.saveShows();
                 mTWiTLab.saveEpisodes();
+                mTWiTLab.flush();
             }
+            mFetcher.commitValidators();
         }
     }
 }
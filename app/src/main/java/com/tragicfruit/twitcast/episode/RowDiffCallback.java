@@ -0,0 +1,74 @@
+package com.tragicfruit.twitcast.episode;
+
+import android.support.v7.util.DiffUtil;
+
+import com.tragicfruit.twitcast.database.EpisodePager;
+
+/**
+ * Diffs two versions of a list from an id and a content hash per row, so the diff can run in
+ * the background without the rows themselves.
+ */
+class RowDiffCallback extends DiffUtil.Callback {
+    private final Rows mOldRows;
+    private final Rows mNewRows;
+
+    /**
+     * The ids and content hashes of a list's rows, in order.
+     */
+    static class Rows {
+        static final Rows EMPTY = new Rows(0);
+
+        final long[] mIds;
+        final int[] mContentHashes;
+
+        Rows(int size) {
+            mIds = new long[size];
+            mContentHashes = new int[size];
+        }
+
+        /**
+         * Returns the rows of the pager's episodes.
+         */
+        static Rows of(EpisodePager pager) {
+            Rows rows = new Rows(pager.getCount());
+            for (int i = 0; i < pager.getCount(); i++) {
+                rows.set(i, pager.getKey(i), pager.getContentHash(i));
+            }
+            return rows;
+        }
+
+        void set(int position, long id, int contentHash) {
+            mIds[position] = id;
+            mContentHashes[position] = contentHash;
+        }
+
+        int size() {
+            return mIds.length;
+        }
+    }
+
+    RowDiffCallback(Rows oldRows, Rows newRows) {
+        mOldRows = oldRows;
+        mNewRows = newRows;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldRows.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewRows.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldRows.mIds[oldItemPosition] == mNewRows.mIds[newItemPosition];
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldRows.mContentHashes[oldItemPosition] == mNewRows.mContentHashes[newItemPosition];
+    }
+}
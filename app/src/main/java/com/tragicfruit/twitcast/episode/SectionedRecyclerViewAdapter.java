@@ -2,7 +2,6 @@ package com.tragicfruit.twitcast.episode;
 
 import android.content.Context;
 import android.support.v7.widget.RecyclerView;
-import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -24,7 +23,10 @@ public class SectionedRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerV
     private int mTextResourceId;
     private LayoutInflater mLayoutInflater;
     private RecyclerView.Adapter mBaseAdapter;
-    private SparseArray<Section> mSections = new SparseArray<>();
+    private Section[] mSections = new Section[0];
+    // both ascending, so positions map either way with a binary search
+    private int[] mFirstPositions = new int[0];
+    private int[] mSectionedPositions = new int[0];
 
 
     public SectionedRecyclerViewAdapter(Context context, int sectionResourceId, int textResourceId,
@@ -46,7 +48,10 @@ public class SectionedRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerV
             @Override
             public void onItemRangeChanged(int positionStart, int itemCount) {
                 mValid = mBaseAdapter.getItemCount()>0;
-                notifyItemRangeChanged(positionStart, itemCount);
+                // also rebinds any headers within the range, which is harmless
+                int sectionedStart = positionToSectionedPosition(positionStart);
+                int sectionedEnd = positionToSectionedPosition(positionStart + itemCount - 1);
+                notifyItemRangeChanged(sectionedStart, sectionedEnd - sectionedStart + 1);
             }
 
             @Override
@@ -86,8 +91,9 @@ public class SectionedRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerV
 
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder sectionViewHolder, int position) {
-        if (isSectionHeaderPosition(position)) {
-            ((SectionViewHolder)sectionViewHolder).title.setText(mSections.get(position).title);
+        int sectionIndex = getSectionIndex(position);
+        if (sectionIndex >= 0) {
+            ((SectionViewHolder)sectionViewHolder).title.setText(mSections[sectionIndex].title);
         } else {
             mBaseAdapter.onBindViewHolder(sectionViewHolder,sectionedPositionToPosition(position));
         }
@@ -96,9 +102,10 @@ public class SectionedRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerV
 
     @Override
     public int getItemViewType(int position) {
-        return isSectionHeaderPosition(position)
+        int basePosition = sectionedPositionToPosition(position);
+        return basePosition == RecyclerView.NO_POSITION
                 ? SECTION_TYPE
-                : mBaseAdapter.getItemViewType(sectionedPositionToPosition(position)) +1 ;
+                : mBaseAdapter.getItemViewType(basePosition) +1 ;
     }
 
 
@@ -119,8 +126,15 @@ public class SectionedRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerV
 
 
     public void setSections(Section[] sections) {
-        mSections.clear();
+        replaceSections(sections);
+        notifyDataSetChanged();
+    }
 
+    /**
+     * Replaces the sections without notifying observers, for callers that dispatch the exact
+     * changes themselves, e.g. from a DiffUtil result.
+     */
+    public void replaceSections(Section[] sections) {
         Arrays.sort(sections, new Comparator<Section>() {
             @Override
             public int compare(Section o, Section o1) {
@@ -130,57 +144,66 @@ public class SectionedRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerV
             }
         });
 
-        int offset = 0; // offset positions for the headers we're adding
-        for (Section section : sections) {
-            section.sectionedPosition = section.firstPosition + offset;
-            mSections.append(section.sectionedPosition, section);
-            ++offset;
+        mSections = sections;
+        mFirstPositions = new int[sections.length];
+        mSectionedPositions = new int[sections.length];
+        for (int i = 0; i < sections.length; i++) {
+            // offset positions for the headers before this one
+            sections[i].sectionedPosition = sections[i].firstPosition + i;
+            mFirstPositions[i] = sections[i].firstPosition;
+            mSectionedPositions[i] = sections[i].sectionedPosition;
         }
-
-        notifyDataSetChanged();
     }
 
     public int positionToSectionedPosition(int position) {
-        int offset = 0;
-        for (int i = 0; i < mSections.size(); i++) {
-            if (mSections.valueAt(i).firstPosition > position) {
-                break;
-            }
-            ++offset;
-        }
-        return position + offset;
+        return position + countAtOrBefore(mFirstPositions, position);
     }
 
     public int sectionedPositionToPosition(int sectionedPosition) {
-        if (isSectionHeaderPosition(sectionedPosition)) {
+        int headers = countAtOrBefore(mSectionedPositions, sectionedPosition);
+        if (headers > 0 && mSectionedPositions[headers - 1] == sectionedPosition) {
             return RecyclerView.NO_POSITION;
         }
 
-        int offset = 0;
-        for (int i = 0; i < mSections.size(); i++) {
-            if (mSections.valueAt(i).sectionedPosition > sectionedPosition) {
-                break;
-            }
-            --offset;
-        }
-        return sectionedPosition + offset;
+        return sectionedPosition - headers;
     }
 
     public boolean isSectionHeaderPosition(int position) {
-        return mSections.get(position) != null;
+        return getSectionIndex(position) >= 0;
+    }
+
+    // negative unless the position is a header
+    private int getSectionIndex(int position) {
+        return Arrays.binarySearch(mSectionedPositions, position);
+    }
+
+    // the number of positions no greater than the position
+    private static int countAtOrBefore(int[] positions, int position) {
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
 
 
     @Override
     public long getItemId(int position) {
-        return isSectionHeaderPosition(position)
-                ? Integer.MAX_VALUE - mSections.indexOfKey(position)
+        int sectionIndex = getSectionIndex(position);
+        return sectionIndex >= 0
+                ? Integer.MAX_VALUE - sectionIndex
                 : mBaseAdapter.getItemId(sectionedPositionToPosition(position));
     }
 
     @Override
     public int getItemCount() {
-        return (mValid ? mBaseAdapter.getItemCount() + mSections.size() : 0);
+        return (mValid ? mBaseAdapter.getItemCount() + mSections.length : 0);
     }
 
 }
\ No newline at end of file
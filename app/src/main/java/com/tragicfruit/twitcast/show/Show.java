@@ -1,26 +1,14 @@
 package com.tragicfruit.twitcast.show;
 
-import android.content.Context;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-
-import com.tragicfruit.twitcast.episode.Episode;
-import com.tragicfruit.twitcast.utils.PictureUtils;
-
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Created by Jeremy on 24/02/2016.
  */
 public class Show {
-    private List<Episode> mEpisodes;
     private String mTitle;
     private String mShortCode;
     private String mCoverArtUrl;
     private String mCoverArtUrlSmall;
     private String mCoverArtLocalPath;
-    private Drawable mCoverArt;
     private int mId;
     private String mDescription;
     private String mVideoHdFeed;
@@ -29,10 +17,6 @@ public class Show {
     private String mAudioFeed;
     private boolean mLoadedAllEpisodes;
 
-    public Show() {
-        mEpisodes = new ArrayList<>();
-    }
-
     public String getTitle() {
         return mTitle;
     }
@@ -73,19 +57,6 @@ public class Show {
         mCoverArtLocalPath = coverArtLocalPath;
     }
 
-    public Drawable getCoverArt() {
-        return mCoverArt;
-    }
-
-    public void setCoverArt(String path, Context context, double reduceFactor) {
-        mCoverArt = new BitmapDrawable(context.getResources(),
-                PictureUtils.getScaledBitmap(path, reduceFactor, context));
-    }
-
-    public void setCoverArt(Drawable drawable) {
-        mCoverArt = drawable;
-    }
-
     public int getId() {
         return mId;
     }
@@ -94,18 +65,6 @@ public class Show {
         mId = id;
     }
 
-    public List<Episode> getEpisodes() {
-        return mEpisodes;
-    }
-
-    public void addEpisode(Episode episode) {
-        mEpisodes.add(episode);
-    }
-
-    public void removeEpisode(Episode episode) {
-        mEpisodes.remove(episode);
-    }
-
     public String getDescription() {
         return mDescription;
     }
@@ -3,6 +3,7 @@ package com.tragicfruit.twitcast.show;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.ConnectivityManager;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -26,12 +27,14 @@ import android.widget.Toast;
 
 import com.tragicfruit.twitcast.R;
 import com.tragicfruit.twitcast.constants.Constants;
+import com.tragicfruit.twitcast.database.CoverArtSync;
 import com.tragicfruit.twitcast.database.TWiTLab;
 import com.tragicfruit.twitcast.dialogs.ChooseQualityFragment;
 import com.tragicfruit.twitcast.dialogs.UpdatingShowsFragment;
 import com.tragicfruit.twitcast.episode.Episode;
 import com.tragicfruit.twitcast.episode.EpisodeListActivity;
 import com.tragicfruit.twitcast.episode.StreamQuality;
+import com.tragicfruit.twitcast.utils.CoverArtCache;
 import com.tragicfruit.twitcast.utils.QueryPreferences;
 import com.tragicfruit.twitcast.database.TWiTFetcher;
 
@@ -81,16 +84,51 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
 
         mDatabase = TWiTLab.get(getActivity());
 
-        if (mDatabase.getShows().isEmpty() || QueryPreferences.getForceRefetchShows(getActivity())) {
-            QueryPreferences.setForceRefetchShows(getContext(), false);
-            updateShows();
-        } else if (!isCoverArtSet()) {
-            updateCoverArt();
-        } else {
-            updateEpisodes();
-        }
+        mDatabase.whenReady(TWiTLab.Stage.SHOWS, new Runnable() {
+            @Override
+            public void run() {
+                if (!isAdded()) {
+                    return;
+                }
+
+                if (mDatabase.getShows().isEmpty() || QueryPreferences.getForceRefetchShows(getActivity())) {
+                    QueryPreferences.setForceRefetchShows(getContext(), false);
+                    updateShows(false);
+                } else {
+                    setupAdapter();
+                    mDatabase.whenReady(TWiTLab.Stage.VISIBLE_COVER_ART, mRefreshGrid);
+                    mDatabase.whenReady(TWiTLab.Stage.ALL_COVER_ART, mUpdateAfterStartup);
+                }
+            }
+        });
     }
 
+    private final Runnable mRefreshGrid = new Runnable() {
+        @Override
+        public void run() {
+            if (isAdded() && mRecyclerView != null && mRecyclerView.getAdapter() != null) {
+                mRecyclerView.getAdapter().notifyDataSetChanged();
+            }
+        }
+    };
+
+    // episodes and every cover art are loaded by now
+    private final Runnable mUpdateAfterStartup = new Runnable() {
+        @Override
+        public void run() {
+            if (!isAdded()) {
+                return;
+            }
+
+            mRefreshGrid.run();
+            if (!isCoverArtSet()) {
+                updateCoverArt(null);
+            } else {
+                updateEpisodes();
+            }
+        }
+    };
+
     private boolean isNetworkAvailableAndConnected() {
         ConnectivityManager cm = (ConnectivityManager) getActivity().getSystemService(Context.CONNECTIVITY_SERVICE);
 
@@ -100,12 +138,16 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
         return isNetworkConnected;
     }
 
-    private void updateShows() {
+    /**
+     * Fetches the shows, then their cover art and episodes if they have changed. If conditional,
+     * shows unchanged since the last refresh aren't downloaded again.
+     */
+    private void updateShows(boolean conditional) {
         if (isNetworkAvailableAndConnected()) {
             mRefreshingShows = true;
             getActivity().invalidateOptionsMenu();
 
-            mFetchShowsTask = new FetchShowsTask();
+            mFetchShowsTask = new FetchShowsTask(conditional);
             mFetchShowsTask.execute();
         } else {
             mRefreshingShows = false;
@@ -116,12 +158,16 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
         }
     }
 
-    private void updateCoverArt() {
+    /**
+     * Syncs the cover art of the shows. showsFetcher is the fetcher of shows not yet saved, if
+     * any, whose validators are committed once they are.
+     */
+    private void updateCoverArt(TWiTFetcher showsFetcher) {
         if (isNetworkAvailableAndConnected()) {
             mRefreshingShows = true;
             getActivity().invalidateOptionsMenu();
 
-            mFetchCoverArtTask = new FetchCoverArtTask();
+            mFetchCoverArtTask = new FetchCoverArtTask(showsFetcher);
             mFetchCoverArtTask.execute();
         } else {
             mRefreshingShows = false;
@@ -144,7 +190,7 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
 
     private boolean isCoverArtSet() {
         for (Show show : mDatabase.getShows()) {
-            if (show.getCoverArt() == null) {
+            if (show.getCoverArtLocalPath() == null) {
                 return false;
             }
         }
@@ -166,18 +212,22 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
 
     @Override
     public void onGlobalLayout() {
-        if (isCoverArtSet() || mRefreshingShows) {
+        // cover art is still loading in the background
+        if (!mDatabase.isReady(TWiTLab.Stage.ALL_COVER_ART)) {
             return;
         }
 
-        // set up cover art
-        int spanCount = mRecyclerView.getSpanCount();
-        QueryPreferences.setGridSpanCount(getActivity(), spanCount);
-        double reduceFactor = 1.0 / spanCount;
-        for (Show show : mDatabase.getShows()) {
-            show.setCoverArt(show.getCoverArtLocalPath(), getActivity(),
-                    reduceFactor);
+        if (mRefreshingShows) {
+            return;
+        }
+
+        // cover art is decoded at the estimated size until the grid is first measured
+        int cellSize = mRecyclerView.getStretchedSize();
+        if (cellSize == 0 || cellSize == QueryPreferences.getGridCellSize(getActivity())) {
+            return;
         }
+        QueryPreferences.setGridSpanCount(getActivity(), mRecyclerView.getSpanCount());
+        QueryPreferences.setGridCellSize(getActivity(), cellSize);
 
         if (mRecyclerView.getAdapter() != null) {
             mRecyclerView.getAdapter().notifyDataSetChanged();
@@ -198,9 +248,9 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
         switch (item.getItemId()) {
             case R.id.refresh_button:
                 if (mFetchEpisodesTask != null) {
-                    mFetchEpisodesTask.cancel(false);
+                    mFetchEpisodesTask.cancel(true);
                 }
-                updateShows();
+                updateShows(true);
                 return true;
             case R.id.choose_quality:
                 FragmentManager fm = getFragmentManager();
@@ -214,7 +264,7 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
     }
 
     private void setupAdapter() {
-        if (isAdded() && !mRefreshingShows) {
+        if (isAdded() && mRecyclerView != null && !mRefreshingShows) {
             if (!mDatabase.getShows().isEmpty()) {
                 mRecyclerView.setAdapter(new ShowAdapter(mDatabase.getShows()));
             } else {
@@ -269,7 +319,7 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
         }
 
         if (mFetchEpisodesTask != null) {
-            mFetchEpisodesTask.cancel(false);
+            mFetchEpisodesTask.cancel(true);
         }
     }
 
@@ -297,7 +347,8 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
         }
     }
 
-    private class ShowHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    private class ShowHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, CoverArtCache.Callback {
         private Show mShow;
         private ImageView mImageView;
 
@@ -314,8 +365,23 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
 
         public void bindShow(Show show) {
             mShow = show;
-            mImageView.setImageDrawable(show.getCoverArt());
             mImageView.setContentDescription(show.getTitle());
+
+            CoverArtCache cache = CoverArtCache.get(getActivity());
+            String path = show.getCoverArtLocalPath();
+            Bitmap bitmap = cache.getCached(path, cache.getSize());
+            mImageView.setImageBitmap(bitmap);
+            if (bitmap == null && path != null) {
+                cache.load(path, cache.getSize(), this);
+            }
+        }
+
+        @Override
+        public void onCoverArtLoaded(String path, Bitmap bitmap) {
+            // the holder may have been rebound while the image was decoding
+            if (path.equals(mShow.getCoverArtLocalPath())) {
+                mImageView.setImageBitmap(bitmap);
+            }
         }
 
         @Override
@@ -355,6 +421,13 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
     }
 
     private class FetchShowsTask extends AsyncTask<Void, Void, List<Show>> {
+        private final boolean mConditional;
+        private TWiTFetcher mFetcher;
+
+        public FetchShowsTask(boolean conditional) {
+            mConditional = conditional;
+        }
+
         @Override
         protected void onPreExecute() {
             showLoadingDialog();
@@ -362,7 +435,8 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
 
         @Override
         protected List<Show> doInBackground(Void... params) {
-            return new TWiTFetcher(getActivity()).fetchShows();
+            mFetcher = new TWiTFetcher(getActivity());
+            return mFetcher.fetchShows(mConditional);
         }
 
         @Override
@@ -371,10 +445,17 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
                 return;
             }
 
-            if (showList != null) { // save shows
+            if (showList != null && showList.isEmpty()) { // unchanged since last refresh
+                mRefreshingShows = false;
+                getActivity().invalidateOptionsMenu();
+
+                // no cover art to sync or episodes to reset, only new episodes to fetch
+                setupAdapter();
+                updateEpisodes();
+            } else if (showList != null) { // save shows
                 Log.d(TAG, "Fetched shows");
                 mDatabase.setShows(showList);
-                updateCoverArt();
+                updateCoverArt(mFetcher);
             } else { // or keep ones from database
                 dismissLoadingDialog();
                 Toast.makeText(getActivity(),
@@ -384,31 +465,32 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
     }
 
     private class FetchCoverArtTask extends AsyncTask<Void, Integer, Boolean> {
+        private final TWiTFetcher mShowsFetcher;
+
+        public FetchCoverArtTask(TWiTFetcher showsFetcher) {
+            mShowsFetcher = showsFetcher;
+        }
+
         @Override
         protected Boolean doInBackground(Void... params) {
-            // clean up old cover art
-            cleanUp(Constants.COVER_ART_FOLDER);
-            cleanUp(Constants.LOGO_FOLDER);
-            for (Show show : mDatabase.getShows()) {
-                show.setCoverArt(null);
+            try {
+                // old images stay in place until they are replaced
+                List<Show> changedShows = new CoverArtSync(getActivity()).sync(mDatabase.getShows());
+                CoverArtCache cache = CoverArtCache.get(getActivity());
+                for (Show show : changedShows) {
+                    cache.remove(show.getCoverArtLocalPath());
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot sync cover art", e);
+                return false;
             }
 
-            // download new cover art
-            for (Show show : mDatabase.getShows()) {
-                try {
-                    File coverArtFile = new TWiTFetcher(getActivity()).getCoverArt(show);
-
-                    if (isCancelled()) {
-                        break;
-                    }
-
-                    show.setCoverArtLocalPath(coverArtFile.getAbsolutePath());
-                } catch (IOException e) {
-                    Log.e(TAG, "Cannot download cover art for " + show.getTitle(), e);
-                    return false;
-                }
+            if (isCancelled()) {
+                return false;
             }
 
+            cleanUp(Constants.LOGO_FOLDER);
+
             // pull logo from assets
             try {
                 saveFromAssets(Constants.LOGO_FILE, Constants.LOGO_FOLDER);
@@ -491,38 +573,44 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
 
             Log.d(TAG, "Fetched cover art");
             setupAdapter();
+
+            // the shows can be asked for conditionally once they're saved
+            if (mShowsFetcher != null) {
+                mDatabase.saveShows();
+                mShowsFetcher.commitValidators();
+            }
+
             mDatabase.resetEpisodes();
             updateEpisodes();
         }
     }
 
-    private class FetchEpisodesTask extends AsyncTask<Void, Void, List<Episode>> {
+    private class FetchEpisodesTask extends AsyncTask<Void, Void, Boolean> {
+        private TWiTFetcher mFetcher;
 
         @Override
-        protected List<Episode> doInBackground(Void... params) {
+        protected Boolean doInBackground(Void... params) {
+            List<Episode> episodeList;
             try {
-                return new TWiTFetcher(getActivity()).fetchAllEpisodes();
+                mFetcher = new TWiTFetcher(getActivity());
+                episodeList = mFetcher.fetchAllEpisodes();
             } catch (IOException e) {
                 Log.e(TAG, "Error fetching episodes", e);
                 return null;
             }
-        }
 
-        @Override
-        protected void onPostExecute(List<Episode> episodeList) {
-            if (isCancelled()) {
-                return;
+            if (episodeList == null) { // couldn't fetch the audio feed
+                return null;
             }
 
-            if (episodeList == null || episodeList.isEmpty()) {
-                dismissLoadingDialog();
-                mCallbacks.showNoConnectionSnackbar();
-                return;
+            if (episodeList.isEmpty() || isCancelled()) { // feeds unchanged since last refresh
+                return false;
             }
 
             // reset episodes if local episodes obsolete
-            if (!mDatabase.getEpisodes().isEmpty()) {
-                Episode newestLocal = mDatabase.getEpisodes().get(0);
+            List<Episode> localEpisodes = mDatabase.getEpisodes();
+            if (!localEpisodes.isEmpty()) {
+                Episode newestLocal = localEpisodes.get(0);
                 Episode oldestServer = episodeList.get(episodeList.size() - 1);
 
                 Date newestLocalDate = newestLocal.getPublicationDate();
@@ -534,15 +622,30 @@ public class ShowsFragment extends Fragment implements ViewTreeObserver.OnGlobal
                 }
             }
 
-            boolean newShows = mDatabase.addEpisodes(episodeList);
+            // builds and publishes the new episodes off the main thread
+            return mDatabase.addEpisodes(episodeList);
+        }
+
+        @Override
+        protected void onPostExecute(Boolean newShows) {
+            if (isCancelled()) {
+                return;
+            }
+
             dismissLoadingDialog();
 
-            if (newShows) {
-                mCallbacks.refreshLatestEpisodes();
+            if (newShows == null) {
+                mCallbacks.showNoConnectionSnackbar();
+                return;
+            }
 
+            // the latest episodes reload once the new episodes are saved
+            if (newShows) {
                 TWiTLab.get(getActivity()).saveShows();
                 TWiTLab.get(getActivity()).saveEpisodes();
+                TWiTLab.get(getActivity()).flush();
             }
+            mFetcher.commitValidators();
         }
     }
 }
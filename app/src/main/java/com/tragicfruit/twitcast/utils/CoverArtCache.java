@@ -0,0 +1,197 @@
+package com.tragicfruit.twitcast.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Decoded cover art, shared by every screen that shows it. Bitmaps are kept in a memory LRU
+ * keyed by image and size and bounded in bytes, so only recently shown art stays resident. A miss
+ * decodes from disk: the thumbnail rendered for that size if there is one, or else the
+ * downloaded original.
+ *
+ * Use getCached() and load() on the main thread; get() and preload() block, so call them in the
+ * background.
+ */
+public class CoverArtCache {
+    private static final String TAG = "CoverArtCache";
+
+    // share of the heap the decoded bitmaps may take
+    private static final int MEMORY_FRACTION = 8;
+
+    private static CoverArtCache sCoverArtCache;
+
+    private final CoverArtThumbnails mThumbnails;
+    private final LruCache<String, Bitmap> mMemory;
+    private final CoverArtThumbnails.DecodeStats mDecodeStats = new CoverArtThumbnails.DecodeStats();
+    private final Executor mDecodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // loads in flight, with whoever is waiting on them; main thread only
+    private final Map<String, List<Callback>> mPendingLoads = new HashMap<>();
+
+    public interface Callback {
+        /**
+         * Called on the main thread, with null if the image couldn't be decoded.
+         */
+        void onCoverArtLoaded(String path, Bitmap bitmap);
+    }
+
+    public static synchronized CoverArtCache get(Context context) {
+        if (sCoverArtCache == null) {
+            sCoverArtCache = new CoverArtCache(context);
+        }
+
+        return sCoverArtCache;
+    }
+
+    private CoverArtCache(Context context) {
+        mThumbnails = new CoverArtThumbnails(context);
+
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / MEMORY_FRACTION);
+        mMemory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the size cover art is decoded at: the grid cell, which the lists scale down from.
+     */
+    public int getSize() {
+        return mThumbnails.getGridCellSize();
+    }
+
+    /**
+     * Returns the image at the size if it is in memory, without touching the disk.
+     */
+    public Bitmap getCached(String path, int size) {
+        if (path == null) {
+            return null;
+        }
+        return mMemory.get(getKey(path, size));
+    }
+
+    /**
+     * Returns the image at the size, decoding it from disk on a miss.
+     */
+    public Bitmap get(String path, int size) {
+        Bitmap bitmap = getCached(path, size);
+        if (bitmap == null && path != null) {
+            bitmap = decode(path, size);
+            if (bitmap != null) {
+                mMemory.put(getKey(path, size), bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes the image into memory ahead of being shown, unless that would evict another.
+     */
+    public void preload(String path, int size) {
+        if (path == null || getCached(path, size) != null) {
+            return;
+        }
+
+        Bitmap bitmap = decode(path, size);
+        if (bitmap == null) {
+            return;
+        }
+
+        if (mMemory.size() + bitmap.getByteCount() <= mMemory.maxSize()) {
+            mMemory.put(getKey(path, size), bitmap);
+        } else {
+            Log.d(TAG, "No room to preload " + path);
+        }
+    }
+
+    /**
+     * Decodes the image in the background and hands it to the callback. Callers waiting on the
+     * same image share one decode.
+     */
+    public void load(final String path, final int size, Callback callback) {
+        final String key = getKey(path, size);
+        List<Callback> callbacks = mPendingLoads.get(key);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        mPendingLoads.put(key, callbacks);
+
+        mDecodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = get(path, size);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Callback waiting : mPendingLoads.remove(key)) {
+                            waiting.onCoverArtLoaded(path, bitmap);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Forgets every size of the image, e.g. once a newer one is downloaded in its place.
+     */
+    public void remove(String path) {
+        String prefix = path + "@";
+        for (String key : mMemory.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemory.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops decoded images when the system is short of memory: all of them, or else the least
+     * recently shown half.
+     */
+    public void trimMemory(boolean all) {
+        Log.d(TAG, toString());
+        if (all) {
+            mMemory.evictAll();
+        } else {
+            mMemory.trimToSize(mMemory.maxSize() / 2);
+        }
+    }
+
+    private Bitmap decode(String path, int size) {
+        try {
+            return mThumbnails.decode(path, size, mDecodeStats);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error decoding " + path, e);
+            return null;
+        }
+    }
+
+    private static String getKey(String path, int size) {
+        return path + "@" + size;
+    }
+
+    @Override
+    public String toString() {
+        return "Cover art: " + mMemory.size() / 1024 + " of " + mMemory.maxSize() / 1024 + " KB, "
+                + mMemory.hitCount() + " hits, " + mMemory.missCount() + " misses, "
+                + mMemory.evictionCount() + " evictions. " + mDecodeStats;
+    }
+}
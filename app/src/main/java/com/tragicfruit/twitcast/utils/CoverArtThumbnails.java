@@ -0,0 +1,227 @@
+package com.tragicfruit.twitcast.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.util.Log;
+
+import com.tragicfruit.twitcast.R;
+import com.tragicfruit.twitcast.constants.Constants;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Pre-sized copies of the downloaded cover art, rendered once when an image is downloaded so
+ * the grid and lists can decode a small image of exactly the size they show instead of the
+ * full 600x600 original.
+ *
+ * Thumbnails are stored as "<image name>_<size>.webp" in their own folder.
+ */
+public class CoverArtThumbnails {
+    private static final String TAG = "CoverArtThumbnails";
+    private static final String EXTENSION = ".webp";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int QUALITY = 90;
+
+    private final Context mContext;
+    private final File mFolder;
+
+    /**
+     * Totals for a batch of decodes, for logging.
+     */
+    public static class DecodeStats {
+        private int mDecodes;
+        private int mThumbnailDecodes;
+        private long mDecodeNanos;
+        private long mBytesRead;
+        private long mSourceBytes;
+
+        private synchronized void add(boolean thumbnail, long nanos, long bytesRead, long sourceBytes) {
+            mDecodes++;
+            if (thumbnail) {
+                mThumbnailDecodes++;
+            }
+            mDecodeNanos += nanos;
+            mBytesRead += bytesRead;
+            mSourceBytes += sourceBytes;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Decoded " + mDecodes + " cover art (" + mThumbnailDecodes + " from thumbnails) in "
+                    + mDecodeNanos / 1000000 + "ms, read " + mBytesRead / 1024 + " KB of "
+                    + mSourceBytes / 1024 + " KB originals, saved " + (mSourceBytes - mBytesRead) / 1024 + " KB";
+        }
+    }
+
+    public CoverArtThumbnails(Context context) {
+        mContext = context.getApplicationContext();
+        mFolder = new File(mContext.getFilesDir(), Constants.COVER_ART_THUMBNAIL_FOLDER);
+    }
+
+    /**
+     * Returns the sizes rendered for each image: the grid cell in either orientation, the
+     * last measured grid cell, and the notification icon.
+     */
+    public Set<Integer> getSizes() {
+        Set<Integer> sizes = new TreeSet<>();
+
+        Point displaySize = PictureUtils.getDisplaySize(mContext);
+        sizes.add(estimateGridCellSize(displaySize.x));
+        sizes.add(estimateGridCellSize(displaySize.y));
+
+        int measuredSize = QueryPreferences.getGridCellSize(mContext);
+        if (measuredSize > 0) {
+            sizes.add(measuredSize);
+        }
+
+        sizes.add(mContext.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width));
+        return sizes;
+    }
+
+    /**
+     * Returns the grid cell size last measured by the shows grid, or an estimate from the
+     * display width if the grid hasn't been laid out yet.
+     */
+    public int getGridCellSize() {
+        int measuredSize = QueryPreferences.getGridCellSize(mContext);
+        if (measuredSize > 0) {
+            return measuredSize;
+        }
+
+        return estimateGridCellSize(PictureUtils.getDisplaySize(mContext).x);
+    }
+
+    /**
+     * Returns about how many grid cells fit on screen, counting a partly visible last row.
+     */
+    public int getVisibleCellCount() {
+        Point displaySize = PictureUtils.getDisplaySize(mContext);
+        int cellSize = getGridCellSize();
+        int columns = Math.max(1, displaySize.x / cellSize);
+        int rows = displaySize.y / cellSize + 1;
+        return columns * rows;
+    }
+
+    // matches AutofitRecyclerView, which stretches columns to fill the width
+    private int estimateGridCellSize(int width) {
+        int columnWidth = mContext.getResources().getDimensionPixelSize(R.dimen.show_column_width);
+        int spanCount = Math.max(1, width / columnWidth);
+        return width / spanCount;
+    }
+
+    /**
+     * Renders every thumbnail size of the image that isn't already on disk, or all of them if
+     * the image has changed.
+     */
+    public void render(File source, boolean changed) throws IOException {
+        if (!mFolder.exists() && !mFolder.mkdirs()) {
+            throw new IOException("Error creating thumbnail folder");
+        }
+
+        Bitmap original = null;
+        try {
+            for (int size : getSizes()) {
+                File thumbnail = getThumbnailFile(source.getName(), size);
+                if (!changed && thumbnail.exists()) {
+                    continue;
+                }
+
+                if (original == null) {
+                    original = BitmapFactory.decodeFile(source.getPath());
+                    if (original == null) {
+                        throw new IOException("Cannot decode " + source.getAbsolutePath());
+                    }
+                }
+
+                write(original, size, thumbnail);
+            }
+        } finally {
+            if (original != null) {
+                original.recycle();
+            }
+        }
+    }
+
+    private void write(Bitmap original, int size, File file) throws IOException {
+        // never scale up
+        int width = Math.min(size, original.getWidth());
+        int height = Math.min(size, original.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(original, width, height, true);
+
+        File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            if (!scaled.compress(Bitmap.CompressFormat.WEBP, QUALITY, out)) {
+                throw new IOException("Cannot encode " + file.getAbsolutePath());
+            }
+        } finally {
+            out.close();
+            if (scaled != original) {
+                scaled.recycle();
+            }
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Error renaming " + tempFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Decodes the image at the given size, from its thumbnail if there is one.
+     */
+    public Bitmap decode(String sourcePath, int size, DecodeStats stats) {
+        File source = new File(sourcePath);
+        File thumbnail = getThumbnailFile(source.getName(), size);
+
+        long startTime = System.nanoTime();
+        Bitmap bitmap;
+        boolean fromThumbnail = thumbnail.exists();
+        if (fromThumbnail) {
+            bitmap = BitmapFactory.decodeFile(thumbnail.getPath());
+        } else {
+            Log.d(TAG, "No " + size + "px thumbnail for " + source.getName());
+            bitmap = PictureUtils.getScaledBitmap(sourcePath, size, size);
+        }
+
+        if (stats != null) {
+            stats.add(fromThumbnail, System.nanoTime() - startTime,
+                    fromThumbnail ? thumbnail.length() : source.length(), source.length());
+        }
+        return bitmap;
+    }
+
+    /**
+     * Deletes thumbnails of images not in the set, and of sizes no longer rendered.
+     */
+    public void deleteStale(Set<String> sourceNames) {
+        File[] files = mFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Set<String> keep = new TreeSet<>();
+        for (String sourceName : sourceNames) {
+            for (int size : getSizes()) {
+                keep.add(getThumbnailFile(sourceName, size).getName());
+            }
+        }
+
+        for (File file : files) {
+            if (!keep.contains(file.getName()) && file.delete()) {
+                Log.d(TAG, "Deleted " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private File getThumbnailFile(String sourceName, int size) {
+        return new File(mFolder, sourceName + "_" + size + EXTENSION);
+    }
+}
@@ -0,0 +1,80 @@
+package com.tragicfruit.twitcast.utils;
+
+import android.text.format.DateFormat;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Buckets times into local days by their epoch day number, so finding whether two episodes were
+ * published on the same day is an int comparison rather than two Calendars. Each day's label,
+ * e.g. "Yesterday" or "March 6", is formatted once and kept until the day it is relative to ends.
+ * Safe to use from any thread.
+ */
+public class DayBuckets {
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final int RELATIVE_DAYS = 7;
+
+    private final TimeZone mZone;
+    private final int mToday;
+    private final Map<Integer, String> mLabels = new HashMap<>();
+
+    public DayBuckets() {
+        this(TimeZone.getDefault(), System.currentTimeMillis());
+    }
+
+    DayBuckets(TimeZone zone, long now) {
+        mZone = zone;
+        mToday = getDay(now, zone);
+    }
+
+    /**
+     * Returns the number of the day, counted from 1 January 1970, that the time falls on in the
+     * zone. TimeZone.getDefault() returns a copy, so look it up once for a run of times.
+     */
+    public static int getDay(long millis, TimeZone zone) {
+        long localMillis = millis + zone.getOffset(millis);
+        long day = localMillis / MILLIS_PER_DAY;
+        if (localMillis % MILLIS_PER_DAY < 0) {
+            day--; // rounds toward the earlier day before 1970 too
+        }
+        return (int) day;
+    }
+
+    public static int getDay(long millis) {
+        return getDay(millis, TimeZone.getDefault());
+    }
+
+    /**
+     * Returns false once the day the labels are relative to has passed.
+     */
+    public boolean isCurrent() {
+        return getDay(System.currentTimeMillis(), mZone) == mToday;
+    }
+
+    public synchronized String getLabel(int day) {
+        String label = mLabels.get(day);
+        if (label == null) {
+            label = formatLabel(day);
+            mLabels.put(day, label);
+        }
+        return label;
+    }
+
+    private String formatLabel(int day) {
+        int daysAgo = mToday - day;
+        if (daysAgo <= 0) {
+            return "Today";
+        } else if (daysAgo == 1) {
+            return "Yesterday";
+        } else if (daysAgo < RELATIVE_DAYS) {
+            return daysAgo + " days ago";
+        }
+
+        // midday, which is on the same date whatever the daylight saving
+        long localNoon = day * MILLIS_PER_DAY + MILLIS_PER_DAY / 2;
+        return DateFormat.format("MMMM d", new Date(localNoon - mZone.getOffset(localNoon))).toString();
+    }
+}
@@ -0,0 +1,383 @@
+package com.tragicfruit.twitcast.utils;
+
+import java.text.ParseException;
+
+/**
+ * Parses the two date formats the fetcher sees straight to epoch millis, without the
+ * SimpleDateFormat and Calendar allocated per call. Stateless, so safe to use from any thread.
+ *
+ * RFC 822 dates as found in RSS pubDate, e.g. "Wed, 14 Jun 2017 15:43:06 -0700" or "... PDT"
+ * (equivalent to "EEE, d MMM yyyy k:m:s ZZZ"), and ISO 8601 / RFC 3339 dates as returned by
+ * Google Calendar, e.g. "2017-06-14T15:00:00-07:00" or "2017-06-14T22:00:00.000Z".
+ */
+public class FastDateParser {
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    // RFC 822 zone names, with their offsets in minutes
+    private static final String[] ZONE_NAMES = {
+            "GMT", "UTC", "UT", "Z", "EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "PDT"
+    };
+    private static final int[] ZONE_OFFSETS = {
+            0, 0, 0, 0, -5 * 60, -4 * 60, -6 * 60, -5 * 60, -7 * 60, -6 * 60, -8 * 60, -7 * 60
+    };
+
+    private FastDateParser() {
+    }
+
+    /**
+     * Parses an RFC 822 date such as "Wed, 14 Jun 2017 15:43:06 -0700". The day of week and
+     * the seconds are optional.
+     */
+    public static long parseRfc822(CharSequence text) throws ParseException {
+        Cursor cursor = new Cursor(text);
+        cursor.skipSpaces();
+
+        // optional day of week
+        if (cursor.hasNext() && Character.isLetter(cursor.peek())) {
+            while (cursor.hasNext() && Character.isLetter(cursor.peek())) {
+                cursor.next();
+            }
+            cursor.skipSpaces();
+            cursor.expect(',');
+            cursor.skipSpaces();
+        }
+
+        int day = cursor.readNumber(1, 2);
+        cursor.skipSpaces();
+        int month = readMonth(cursor);
+        cursor.skipSpaces();
+        int year = cursor.readNumber(1, 4);
+        cursor.skipSpaces();
+
+        int hour = cursor.readNumber(1, 2);
+        cursor.expect(':');
+        int minute = cursor.readNumber(1, 2);
+        int second = 0;
+        if (cursor.hasNext() && cursor.peek() == ':') {
+            cursor.next();
+            second = cursor.readNumber(1, 2);
+        }
+        cursor.skipSpaces();
+
+        int offsetMinutes = readRfc822Zone(cursor);
+        cursor.skipSpaces();
+        cursor.expectEnd();
+
+        // k is 1-24, with 24 meaning midnight at the start of the day
+        if (hour == 24) {
+            hour = 0;
+        }
+
+        return toEpochMillis(year, month, day, hour, minute, second, 0, offsetMinutes);
+    }
+
+    /**
+     * Parses an ISO 8601 / RFC 3339 date-time such as "2017-06-14T15:00:00-07:00". Fractional
+     * seconds are optional; a missing offset is an error.
+     */
+    public static long parseIso8601(CharSequence text) throws ParseException {
+        Cursor cursor = new Cursor(text);
+        cursor.skipSpaces();
+
+        int year = cursor.readNumber(4, 4);
+        cursor.expect('-');
+        int month = cursor.readNumber(1, 2);
+        cursor.expect('-');
+        int day = cursor.readNumber(1, 2);
+        cursor.expect('T');
+        int hour = cursor.readNumber(1, 2);
+        cursor.expect(':');
+        int minute = cursor.readNumber(1, 2);
+        cursor.expect(':');
+        int second = cursor.readNumber(1, 2);
+
+        int millis = 0;
+        if (cursor.hasNext() && cursor.peek() == '.') {
+            cursor.next();
+            millis = readFraction(cursor);
+        }
+
+        int offsetMinutes;
+        if (cursor.hasNext() && (cursor.peek() == 'Z' || cursor.peek() == 'z')) {
+            cursor.next();
+            offsetMinutes = 0;
+        } else {
+            offsetMinutes = readNumericOffset(cursor);
+        }
+        cursor.skipSpaces();
+        cursor.expectEnd();
+
+        return toEpochMillis(year, month, day, hour, minute, second, millis, offsetMinutes);
+    }
+
+    /**
+     * Formats epoch millis as an RFC 3339 date-time in UTC, e.g. "2017-06-14T22:00:00Z".
+     */
+    public static String formatIso8601(long epochMillis) {
+        long days = floorDiv(epochMillis, MILLIS_PER_DAY);
+        long millisOfDay = epochMillis - days * MILLIS_PER_DAY;
+
+        // civil-from-days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        int hour = (int) (millisOfDay / MILLIS_PER_HOUR);
+        int minute = (int) (millisOfDay % MILLIS_PER_HOUR / MILLIS_PER_MINUTE);
+        int second = (int) (millisOfDay % MILLIS_PER_MINUTE / MILLIS_PER_SECOND);
+
+        StringBuilder builder = new StringBuilder(20);
+        appendPadded(builder, year, 4).append('-');
+        appendPadded(builder, month, 2).append('-');
+        appendPadded(builder, day, 2).append('T');
+        appendPadded(builder, hour, 2).append(':');
+        appendPadded(builder, minute, 2).append(':');
+        appendPadded(builder, second, 2).append('Z');
+        return builder.toString();
+    }
+
+    private static int readMonth(Cursor cursor) throws ParseException {
+        if (cursor.remaining() < 3) {
+            throw cursor.error("month");
+        }
+
+        for (int month = 0; month < 12; month++) {
+            if (cursor.regionMatchesIgnoreCase(MONTHS, month * 3, 3)) {
+                cursor.skip(3);
+                // allow full month names
+                while (cursor.hasNext() && Character.isLetter(cursor.peek())) {
+                    cursor.next();
+                }
+                return month + 1;
+            }
+        }
+
+        throw cursor.error("month");
+    }
+
+    private static int readRfc822Zone(Cursor cursor) throws ParseException {
+        if (!cursor.hasNext()) {
+            throw cursor.error("time zone");
+        }
+
+        char c = cursor.peek();
+        if (c == '+' || c == '-') {
+            return readNumericOffset(cursor);
+        }
+
+        for (int i = 0; i < ZONE_NAMES.length; i++) {
+            String name = ZONE_NAMES[i];
+            if (cursor.remaining() >= name.length()
+                    && cursor.regionMatchesIgnoreCase(name, 0, name.length())
+                    && !isLetterAt(cursor, name.length())) {
+                cursor.skip(name.length());
+
+                // "GMT+hh:mm" style
+                if (ZONE_OFFSETS[i] == 0 && cursor.hasNext()
+                        && (cursor.peek() == '+' || cursor.peek() == '-')) {
+                    return readNumericOffset(cursor);
+                }
+                return ZONE_OFFSETS[i];
+            }
+        }
+
+        throw cursor.error("time zone");
+    }
+
+    private static boolean isLetterAt(Cursor cursor, int offset) {
+        return cursor.remaining() > offset && Character.isLetter(cursor.peek(offset));
+    }
+
+    /**
+     * Reads +hh, +hhmm or +hh:mm.
+     */
+    private static int readNumericOffset(Cursor cursor) throws ParseException {
+        if (!cursor.hasNext()) {
+            throw cursor.error("offset");
+        }
+
+        int sign;
+        char c = cursor.next();
+        if (c == '+') {
+            sign = 1;
+        } else if (c == '-') {
+            sign = -1;
+        } else {
+            throw cursor.error("offset");
+        }
+
+        int hours = cursor.readNumber(2, 2);
+        int minutes = 0;
+        if (cursor.hasNext()) {
+            if (cursor.peek() == ':') {
+                cursor.next();
+                minutes = cursor.readNumber(2, 2);
+            } else if (isDigit(cursor.peek())) {
+                minutes = cursor.readNumber(2, 2);
+            }
+        }
+
+        return sign * (hours * 60 + minutes);
+    }
+
+    // ASCII only, as other scripts' digits aren't numbers in a date, and are slower to check
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int readFraction(Cursor cursor) throws ParseException {
+        int millis = 0;
+        int digits = 0;
+        while (cursor.hasNext() && isDigit(cursor.peek())) {
+            int digit = cursor.next() - '0';
+            if (digits < 3) {
+                millis = millis * 10 + digit;
+            }
+            digits++;
+        }
+
+        if (digits == 0) {
+            throw cursor.error("fraction");
+        }
+
+        for (; digits < 3; digits++) {
+            millis *= 10;
+        }
+        return millis;
+    }
+
+    private static long toEpochMillis(int year, int month, int day, int hour, int minute, int second,
+                                      int millis, int offsetMinutes) throws ParseException {
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 24 || minute > 59 || second > 60) {
+            throw new ParseException("Date field out of range", 0);
+        }
+
+        // fields past the end of the month roll over, matching a lenient SimpleDateFormat
+        long days = daysFromCivil(year, month, 1) + day - 1;
+        return days * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR
+                + minute * MILLIS_PER_MINUTE
+                + second * MILLIS_PER_SECOND
+                + millis
+                - offsetMinutes * MILLIS_PER_MINUTE;
+    }
+
+    // days-from-civil, see http://howardhinnant.github.io/date_algorithms.html
+    private static long daysFromCivil(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            q--;
+        }
+        return q;
+    }
+
+    private static StringBuilder appendPadded(StringBuilder builder, long value, int width) {
+        for (long limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        return builder.append(value);
+    }
+
+    private static class Cursor {
+        private final CharSequence mText;
+        private int mPosition;
+
+        Cursor(CharSequence text) {
+            mText = text;
+        }
+
+        boolean hasNext() {
+            return mPosition < mText.length();
+        }
+
+        int remaining() {
+            return mText.length() - mPosition;
+        }
+
+        char peek() {
+            return mText.charAt(mPosition);
+        }
+
+        char peek(int offset) {
+            return mText.charAt(mPosition + offset);
+        }
+
+        char next() {
+            return mText.charAt(mPosition++);
+        }
+
+        void skip(int count) {
+            mPosition += count;
+        }
+
+        void skipSpaces() {
+            while (hasNext() && Character.isWhitespace(peek())) {
+                mPosition++;
+            }
+        }
+
+        void expect(char c) throws ParseException {
+            if (!hasNext() || peek() != c) {
+                throw error("'" + c + "'");
+            }
+            mPosition++;
+        }
+
+        void expectEnd() throws ParseException {
+            if (hasNext()) {
+                throw error("end of date");
+            }
+        }
+
+        int readNumber(int minDigits, int maxDigits) throws ParseException {
+            int value = 0;
+            int digits = 0;
+            while (digits < maxDigits && hasNext() && isDigit(peek())) {
+                value = value * 10 + (next() - '0');
+                digits++;
+            }
+
+            if (digits < minDigits) {
+                throw error("number");
+            }
+            return value;
+        }
+
+        boolean regionMatchesIgnoreCase(String other, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                char a = Character.toLowerCase(mText.charAt(mPosition + i));
+                char b = Character.toLowerCase(other.charAt(offset + i));
+                if (a != b) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        ParseException error(String expected) {
+            return new ParseException("Expected " + expected + " in \"" + mText + "\"", mPosition);
+        }
+    }
+}
@@ -18,6 +18,7 @@ public class QueryPreferences {
     private static final String PREF_STREAM_SOURCE = "stream_source";
     private static final String PREF_CAST_DEVICE_AUDIO = "cast_device_audio";
     private static final String PREF_GRID_SPAN_COUNT = "grid_span_count";
+    private static final String PREF_GRID_CELL_SIZE = "grid_cell_size";
     private static final String PREF_FORCE_REFETCH_SHOWS = "force_refetch";
 
     public static StreamQuality getStreamQuality(Context context) {
@@ -76,6 +77,18 @@ public class QueryPreferences {
                 .apply();
     }
 
+    public static int getGridCellSize(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getInt(PREF_GRID_CELL_SIZE, 0);
+    }
+
+    public static void setGridCellSize(Context context, int cellSize) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putInt(PREF_GRID_CELL_SIZE, cellSize)
+                .apply();
+    }
+
     public static boolean getForceRefetchShows(Context context) {
         return PreferenceManager.getDefaultSharedPreferences(context)
                 .getBoolean(PREF_FORCE_REFETCH_SHOWS, true);
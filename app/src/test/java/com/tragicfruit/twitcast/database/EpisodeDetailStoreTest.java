@@ -0,0 +1,109 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.episode.EpisodeDetails;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EpisodeDetailStoreTest {
+    private final Map<String, EpisodeDetails> mSaved = new HashMap<>();
+    private final List<String> mLoads = new ArrayList<>();
+    private EpisodeDetailStore mStore;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 10; i++) {
+            mSaved.put("Episode " + i, details(i, 100));
+        }
+
+        // room for two of the saved details
+        mStore = new EpisodeDetailStore(new EpisodeDetailStore.Loader() {
+            @Override
+            public EpisodeDetails load(String title) {
+                mLoads.add(title);
+                return mSaved.get(title);
+            }
+        }, 250);
+    }
+
+    private static EpisodeDetails details(int i, int length) {
+        String subtitle = "Subtitle " + i;
+        StringBuilder showNotes = new StringBuilder();
+        while (subtitle.length() + showNotes.length() < length) {
+            showNotes.append('x');
+        }
+        return new EpisodeDetails(subtitle, showNotes.toString());
+    }
+
+    @Test
+    public void loadsOnceThenServesFromCache() {
+        assertNull(mStore.getCached("Episode 1"));
+        assertSame(mSaved.get("Episode 1"), mStore.get("Episode 1"));
+        assertSame(mSaved.get("Episode 1"), mStore.get("Episode 1"));
+        assertSame(mSaved.get("Episode 1"), mStore.getCached("Episode 1"));
+        assertEquals(1, mLoads.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondLength() {
+        mStore.get("Episode 1");
+        mStore.get("Episode 2");
+        mStore.get("Episode 1");
+        mStore.get("Episode 3");
+
+        assertNotNull(mStore.getCached("Episode 1"));
+        assertNull(mStore.getCached("Episode 2"));
+        assertNotNull(mStore.getCached("Episode 3"));
+    }
+
+    @Test
+    public void keepsDetailsLargerThanCacheUntilNextLoad() {
+        mSaved.put("Long", details(0, 1000));
+        mStore.get("Episode 1");
+
+        assertNotNull(mStore.get("Long"));
+        assertNotNull(mStore.getCached("Long"));
+        assertNull(mStore.getCached("Episode 1"));
+    }
+
+    @Test
+    public void unsavedDetailsWinUntilSaved() {
+        mStore.get("Episode 1");
+        EpisodeDetails fetched = details(1, 50);
+        mStore.putUnsaved("Episode 1", fetched);
+
+        assertSame(fetched, mStore.get("Episode 1"));
+        assertEquals(1, mStore.getUnsaved().size());
+
+        Map<String, EpisodeDetails> saving = mStore.getUnsaved();
+        EpisodeDetails refetched = details(1, 60);
+        mStore.putUnsaved("Episode 1", refetched);
+        mStore.markSaved(saving);
+
+        // replaced while saving, so still waiting for the next save
+        assertSame(refetched, mStore.getUnsaved().get("Episode 1"));
+
+        mStore.markSaved(mStore.getUnsaved());
+        assertTrue(mStore.getUnsaved().isEmpty());
+    }
+
+    @Test
+    public void removeForgetsUnsavedAndCached() {
+        mStore.putUnsaved("New", details(0, 10));
+        mStore.get("Episode 1");
+
+        mStore.remove("New");
+        mStore.remove("Episode 1");
+
+        assertTrue(mStore.getUnsaved().isEmpty());
+        assertNull(mStore.getCached("Episode 1"));
+        assertNull(mStore.get("New"));
+    }
+}
@@ -0,0 +1,180 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.show.Show;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EpisodeIndexTest {
+    private static final int SHOW_COUNT = 40;
+
+    private static List<Show> createShows() {
+        List<Show> shows = new ArrayList<>();
+        for (int i = 0; i < SHOW_COUNT; i++) {
+            Show show = new Show();
+            show.setId(1600 + i);
+            show.setTitle("Show " + i);
+            shows.add(show);
+        }
+        return shows;
+    }
+
+    private static Episode createEpisode(Show show, int number) {
+        Episode episode = new Episode();
+        episode.setTitle("Episode " + number);
+        episode.setPublicationDate(new Date(1457136000000L + number * 60000L));
+        episode.setShow(show);
+        return episode;
+    }
+
+    @Test
+    public void replacedEpisodeMovesBetweenShows() {
+        List<Show> shows = createShows();
+        EpisodeIndex.Builder builder = EpisodeIndex.EMPTY.withShows(shows).edit();
+        builder.put(createEpisode(shows.get(0), 1));
+        builder.put(createEpisode(shows.get(0), 2));
+        EpisodeIndex index = builder.build(Integer.MAX_VALUE);
+
+        Episode replacement = createEpisode(shows.get(1), 1);
+        builder = index.edit();
+        builder.put(replacement);
+        index = builder.build(Integer.MAX_VALUE);
+
+        assertEquals(2, index.getEpisodes().size());
+        assertSame(replacement, index.getEpisode("Episode 1"));
+        assertEquals(1, index.getEpisodes(shows.get(0)).size());
+        assertSame(replacement, index.getEpisodes(shows.get(1)).get(0));
+    }
+
+    @Test
+    public void snapshotsDontChange() {
+        List<Show> shows = createShows();
+        EpisodeIndex.Builder builder = EpisodeIndex.EMPTY.withShows(shows).edit();
+        builder.put(createEpisode(shows.get(0), 1));
+        EpisodeIndex first = builder.build(Integer.MAX_VALUE);
+        List<Episode> episodes = first.getEpisodes();
+
+        builder = first.edit();
+        builder.put(createEpisode(shows.get(0), 2));
+        EpisodeIndex second = builder.build(Integer.MAX_VALUE);
+        EpisodeIndex third = second.withoutEpisodes();
+
+        assertEquals(1, episodes.size());
+        assertEquals(1, first.getEpisodes(shows.get(0)).size());
+        assertNull(first.getEpisode("Episode 2"));
+        assertEquals(2, second.getEpisodes().size());
+        assertTrue(third.getEpisodes().isEmpty());
+        assertEquals(SHOW_COUNT, third.getShows().size());
+
+        try {
+            episodes.add(createEpisode(shows.get(0), 3));
+            fail("Snapshot lists must be read only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void evictsOldestFromEveryList() {
+        List<Show> shows = createShows();
+        EpisodeIndex.Builder builder = EpisodeIndex.EMPTY.withShows(shows).edit();
+        for (int i = 0; i < 100; i++) {
+            builder.put(createEpisode(shows.get(i % SHOW_COUNT), i));
+        }
+        EpisodeIndex index = builder.build(Integer.MAX_VALUE);
+
+        builder = index.edit();
+        index = builder.build(60);
+
+        assertEquals(40, builder.getEvicted().size());
+        assertEquals(60, index.getEpisodes().size());
+        assertEquals("Episode 99", index.getEpisodes().get(0).getTitle());
+        assertEquals("Episode 40", index.getEpisodes().get(59).getTitle());
+        assertNull(index.getEpisode("Episode 39"));
+        for (Show show : shows) {
+            for (Episode episode : index.getEpisodes(show)) {
+                assertSame(episode, index.getEpisode(episode.getTitle()));
+            }
+        }
+    }
+
+    @Test
+    public void mergesBatchIntoSortedLists() {
+        List<Show> shows = createShows();
+        EpisodeIndex.Builder builder = EpisodeIndex.EMPTY.withShows(shows).edit();
+        for (int i = 0; i < 20; i += 2) {
+            builder.put(createEpisode(shows.get(i % 3), i));
+        }
+        EpisodeIndex index = builder.build(Integer.MAX_VALUE);
+
+        // odd episodes interleave with the existing ones, in no particular order
+        builder = index.edit();
+        for (int i = 19; i > 0; i -= 4) {
+            builder.put(createEpisode(shows.get(i % 3), i));
+        }
+        for (int i = 1; i < 20; i += 4) {
+            builder.put(createEpisode(shows.get(i % 3), i));
+        }
+        index = builder.build(15);
+
+        assertEquals(15, index.getEpisodes().size());
+        for (int i = 0; i < 15; i++) {
+            assertEquals("Episode " + (19 - i), index.getEpisodes().get(i).getTitle());
+        }
+        assertEquals(5, builder.getEvicted().size());
+
+        int showEpisodeCount = 0;
+        for (Show show : shows) {
+            List<Episode> showEpisodes = index.getEpisodes(show);
+            for (int i = 0; i < showEpisodes.size(); i++) {
+                assertSame(show, showEpisodes.get(i).getShow());
+                if (i > 0) {
+                    assertTrue(EpisodeIndex.NEWEST_FIRST.compare(showEpisodes.get(i - 1), showEpisodes.get(i)) < 0);
+                }
+            }
+            showEpisodeCount += showEpisodes.size();
+        }
+        assertEquals(15, showEpisodeCount);
+    }
+
+    @Test
+    public void comparatorOrdersEqualDatesByTitle() {
+        Show show = createShows().get(0);
+        Episode first = createEpisode(show, 1);
+        Episode second = createEpisode(show, 1);
+        second.setTitle("Episode 1b");
+        Episode same = createEpisode(show, 1);
+
+        assertTrue(EpisodeIndex.NEWEST_FIRST.compare(first, second) < 0);
+        assertTrue(EpisodeIndex.NEWEST_FIRST.compare(second, first) > 0);
+        assertEquals(0, EpisodeIndex.NEWEST_FIRST.compare(first, same));
+    }
+
+    @Test
+    public void newShowsTakeOverEpisodes() {
+        List<Show> shows = createShows();
+        EpisodeIndex.Builder builder = EpisodeIndex.EMPTY.withShows(shows).edit();
+        Episode episode = createEpisode(shows.get(0), 1);
+        builder.put(episode);
+        builder.put(createEpisode(shows.get(SHOW_COUNT - 1), 2));
+        EpisodeIndex index = builder.build(Integer.MAX_VALUE);
+
+        List<Show> newShows = createShows().subList(0, SHOW_COUNT - 1);
+        EpisodeIndex newIndex = index.withShows(newShows);
+
+        assertEquals(1, newIndex.getEpisodes().size());
+        assertSame(newShows.get(0), newIndex.getEpisode("Episode 1").getShow());
+        assertEquals(1, newIndex.getEpisodes(newShows.get(0)).size());
+        assertSame(newShows.get(0), newIndex.getShow(1600));
+
+        // the old snapshot still has the old show
+        assertSame(shows.get(0), episode.getShow());
+        assertSame(episode, index.getEpisode("Episode 1"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.show.Show;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class EpisodePagerTest {
+    private static final int COUNT = 100;
+    private static final int PAGE_SIZE = 10;
+
+    // runs tasks only when asked, standing in for the background and main threads
+    private static class QueueExecutor implements Executor {
+        final Queue<Runnable> mTasks = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.poll().run();
+            }
+        }
+    }
+
+    private final QueueExecutor mLoadExecutor = new QueueExecutor();
+    private final QueueExecutor mMainExecutor = new QueueExecutor();
+    private final List<Integer> mLoadedStarts = new ArrayList<>();
+    private final List<Integer> mNotifiedStarts = new ArrayList<>();
+    private EpisodePager mPager;
+
+    @Before
+    public void setUp() {
+        final Show show = new Show();
+        show.setId(1);
+        show.setTitle("Show");
+
+        int[] days = new int[COUNT];
+        int[] keys = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            days[i] = (COUNT - i) / 3;
+            keys[i] = ("Episode " + i).hashCode();
+        }
+
+        EpisodePager.PageLoader loader = new EpisodePager.PageLoader() {
+            @Override
+            public List<Episode> load(int start, int count) {
+                mLoadedStarts.add(start);
+                List<Episode> episodes = new ArrayList<>();
+                for (int i = start; i < start + count; i++) {
+                    Episode episode = new Episode();
+                    episode.setTitle("Episode " + i);
+                    episode.setPublicationDate(new Date((COUNT - i) * 1000L));
+                    episode.setShow(show);
+                    episodes.add(episode);
+                }
+                return episodes;
+            }
+        };
+
+        mPager = new EpisodePager(days, keys, new int[COUNT], loader, PAGE_SIZE, 3, mLoadExecutor,
+                mMainExecutor);
+        mPager.setListener(new EpisodePager.Listener() {
+            @Override
+            public void onEpisodesLoaded(int positionStart, int itemCount) {
+                assertEquals(PAGE_SIZE, itemCount);
+                mNotifiedStarts.add(positionStart);
+            }
+        });
+    }
+
+    private void runLoads() {
+        mLoadExecutor.runAll();
+        mMainExecutor.runAll();
+    }
+
+    @Test
+    public void sizesListFromDatesWithoutLoading() {
+        assertEquals(COUNT, mPager.getCount());
+        assertEquals(0, mPager.getDay(COUNT - 1));
+        assertEquals("Episode 5".hashCode(), mPager.getKey(5));
+        assertTrue(mLoadedStarts.isEmpty());
+    }
+
+    @Test
+    public void loadsPageOnFirstBindThenNotifies() {
+        assertNull(mPager.getEpisode(35));
+        assertNull(mPager.getEpisode(36)); // already loading, not requested again
+        runLoads();
+
+        assertEquals(1, mLoadedStarts.size());
+        assertEquals(30, (int) mNotifiedStarts.get(0));
+        assertEquals("Episode 35", mPager.getEpisode(35).getTitle());
+        assertEquals("Episode 39", mPager.getEpisode(39).getTitle());
+    }
+
+    @Test
+    public void prefetchesNeighbouringPageNearEdge() {
+        mPager.getEpisode(18);
+        runLoads();
+
+        assertTrue(mLoadedStarts.contains(10));
+        assertTrue(mLoadedStarts.contains(20));
+        assertNotNull(mPager.getEpisode(22));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPages() {
+        for (int page = 0; page < 5; page++) {
+            mPager.getEpisode(page * PAGE_SIZE + 5);
+            runLoads();
+        }
+        mLoadedStarts.clear();
+
+        assertNotNull(mPager.getEpisode(45));
+        assertNull(mPager.getEpisode(5));
+        runLoads();
+        assertEquals(1, mLoadedStarts.size());
+        assertEquals(0, (int) mLoadedStarts.get(0));
+    }
+
+    @Test
+    public void closedPagerDropsLoadsInFlight() {
+        mPager.getEpisode(5);
+        mPager.close();
+        runLoads();
+
+        assertTrue(mNotifiedStarts.isEmpty());
+        assertNull(mPager.getEpisode(5));
+        assertTrue(mLoadExecutor.mTasks.isEmpty());
+    }
+}
@@ -0,0 +1,19 @@
+package com.tragicfruit.twitcast.database;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Makes pagers for tests outside this package, which only read their days and hashes.
+ */
+public class EpisodePagers {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    public static EpisodePager create(int[] days, int[] keys, int[] contentHashes) {
+        return new EpisodePager(days, keys, contentHashes, null, 10, 3, DIRECT, DIRECT);
+    }
+}
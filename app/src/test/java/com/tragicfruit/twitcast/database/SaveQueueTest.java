@@ -0,0 +1,153 @@
+package com.tragicfruit.twitcast.database;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SaveQueueTest {
+    private static class CountingWrite implements Runnable {
+        final AtomicInteger mRuns = new AtomicInteger();
+        volatile CountDownLatch mDone = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            mRuns.incrementAndGet();
+            mDone.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Write didn't run", mDone.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void coalescesRequestsIntoOneWritePerKey() throws Exception {
+        SaveQueue queue = new SaveQueue(200, 0);
+        CountingWrite shows = new CountingWrite();
+        CountingWrite episodes = new CountingWrite();
+
+        // as a refresh saves both tables, several times over
+        for (int i = 0; i < 5; i++) {
+            queue.save("shows", shows);
+            queue.save("episodes", episodes);
+        }
+        assertEquals(10, queue.getStats().mQueueDepth);
+
+        shows.await();
+        episodes.await();
+        Thread.sleep(100);
+
+        assertEquals(1, shows.mRuns.get());
+        assertEquals(1, episodes.mRuns.get());
+        SaveQueue.Stats stats = queue.getStats();
+        assertEquals(10, stats.mRequests);
+        assertEquals(1, stats.mBatches);
+        assertEquals(2, stats.mWrites);
+        assertEquals(0, stats.mQueueDepth);
+    }
+
+    @Test(timeout = 10000)
+    public void limitsBatchRate() throws Exception {
+        SaveQueue queue = new SaveQueue(0, 500);
+        CountingWrite write = new CountingWrite();
+
+        queue.save("episodes", write);
+        write.await();
+        long firstBatchTime = System.currentTimeMillis();
+
+        write.mDone = new CountDownLatch(1);
+        queue.save("episodes", write);
+        write.await();
+
+        assertTrue(System.currentTimeMillis() - firstBatchTime >= 400);
+        assertEquals(2, write.mRuns.get());
+    }
+
+    @Test(timeout = 10000)
+    public void flushWritesWithoutWaiting() throws Exception {
+        SaveQueue queue = new SaveQueue(60000, 60000);
+        CountingWrite write = new CountingWrite();
+
+        queue.save("shows", write);
+        queue.flush();
+        write.await();
+
+        assertEquals(1, write.mRuns.get());
+    }
+
+    @Test(timeout = 10000)
+    public void failedWriteDoesntStopTheQueue() throws Exception {
+        SaveQueue queue = new SaveQueue(0, 0);
+        CountingWrite write = new CountingWrite();
+
+        queue.save("shows", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Database locked");
+            }
+        });
+        queue.save("episodes", write);
+        write.await();
+        Thread.sleep(100);
+
+        assertEquals(1, queue.getStats().mFailedWrites);
+        assertEquals(2, queue.getStats().mWrites);
+    }
+
+    @Test(timeout = 10000)
+    public void failedWriteIsRetriedWithBackoff() throws Exception {
+        SaveQueue queue = new SaveQueue(0, 0, 100);
+        final AtomicInteger runs = new AtomicInteger();
+        CountingWrite write = new CountingWrite() {
+            @Override
+            public void run() {
+                if (runs.incrementAndGet() <= 2) {
+                    throw new IllegalStateException("Database locked");
+                }
+                super.run();
+            }
+        };
+
+        long startTime = System.currentTimeMillis();
+        queue.save("episodes", write);
+        write.await();
+        long elapsed = System.currentTimeMillis() - startTime;
+        Thread.sleep(100);
+
+        // 100ms after the first failure, then 200ms after the second
+        assertTrue(elapsed >= 300);
+        assertEquals(3, runs.get());
+        SaveQueue.Stats stats = queue.getStats();
+        assertEquals(1, stats.mRequests);
+        assertEquals(3, stats.mWrites);
+        assertEquals(2, stats.mFailedWrites);
+        assertEquals(2, stats.mRetries);
+        assertEquals(0, stats.mQueueDepth);
+    }
+
+    @Test(timeout = 10000)
+    public void givesUpAfterMaxRetries() throws Exception {
+        SaveQueue queue = new SaveQueue(0, 0, 1);
+        final AtomicInteger runs = new AtomicInteger();
+
+        queue.save("shows", new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                throw new IllegalStateException("Disk full");
+            }
+        });
+        while (runs.get() < SaveQueue.MAX_RETRIES + 1) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+
+        assertEquals(SaveQueue.MAX_RETRIES + 1, runs.get());
+        assertEquals(SaveQueue.MAX_RETRIES, queue.getStats().mRetries);
+        assertEquals(0, queue.getStats().mQueueDepth);
+    }
+}
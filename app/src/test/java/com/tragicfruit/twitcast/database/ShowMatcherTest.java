@@ -0,0 +1,127 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.show.Show;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ShowMatcherTest {
+    private static Show createShow(int id, String title, String shortCode) {
+        Show show = new Show();
+        show.setId(id);
+        show.setTitle(title);
+        show.setShortCode(shortCode);
+        return show;
+    }
+
+    private static final Show TWIT = createShow(1, "This Week in Tech", "TWiT");
+    private static final Show SECURITY_NOW = createShow(2, "Security Now", "SN");
+    private static final Show TRIANGULATION = createShow(3, "Triangulation", "Tri");
+    private static final Show TWIG = createShow(4, "This Week in Google", "TWiG");
+    private static final Show TECH_NEWS = createShow(5, "Tech News", "TNT");
+    private static final Show TECH_NEWS_TODAY = createShow(6, "Tech News Today", "TNT");
+
+    private static final List<Show> SHOWS = Arrays.asList(
+            TWIT, SECURITY_NOW, TRIANGULATION, TWIG, TECH_NEWS, TECH_NEWS_TODAY);
+
+    @Test
+    public void matchesShowTitles() {
+        ShowMatcher matcher = new ShowMatcher(SHOWS);
+
+        assertSame(SECURITY_NOW, matcher.match("Security Now 550: Listener Feedback"));
+        assertSame(TWIT, matcher.match("This Week in Tech 560: Brains in a Jar"));
+        assertSame(TWIG, matcher.match("This Week in Google 345"));
+        assertNull(matcher.match("The New Screen Savers 50"));
+        assertNull(matcher.match(""));
+    }
+
+    @Test
+    public void longestMatchWinsRegardlessOfOrder() {
+        List<Show> shows = new ArrayList<>(SHOWS);
+        for (int i = 0; i < 2; i++) {
+            ShowMatcher matcher = new ShowMatcher(shows);
+
+            assertSame(TECH_NEWS_TODAY, matcher.match("Tech News Today 1500"));
+            assertSame(TECH_NEWS, matcher.match("Tech News 2"));
+            // the title is the longer match, even though the code comes first
+            assertSame(SECURITY_NOW, matcher.match("SN: Security Now 550"));
+
+            Collections.reverse(shows);
+        }
+    }
+
+    @Test
+    public void shortCodesMatchWholeWords() {
+        ShowMatcher matcher = new ShowMatcher(SHOWS);
+
+        assertSame(SECURITY_NOW, matcher.match("SN 550"));
+        assertSame(TWIT, matcher.match("TWiT 560: Brains in a Jar"));
+        assertNull(matcher.match("SNOW 12"));
+        assertNull(matcher.match("Tribute 12"));
+    }
+
+    @Test
+    public void earliestMatchWinsForEqualLength() {
+        ShowMatcher matcher = new ShowMatcher(SHOWS);
+
+        assertSame(TWIG, matcher.match("TWiG 12 with TWiT hosts"));
+        assertSame(TWIT, matcher.match("TWiT 12 with TWiG hosts"));
+    }
+
+    @Test
+    public void matchesLikeLongestContains() {
+        Random random = new Random(42);
+        String[] words = { "This", "Week", "in", "Tech", "Google", "News", "Today", "Security",
+                "Now", "SN", "TWiT", "Triangulation", "550", ":" };
+        ShowMatcher matcher = new ShowMatcher(SHOWS);
+
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder title = new StringBuilder();
+            int wordCount = 1 + random.nextInt(8);
+            for (int j = 0; j < wordCount; j++) {
+                if (j > 0) {
+                    title.append(' ');
+                }
+                title.append(words[random.nextInt(words.length)]);
+            }
+
+            assertSame(title.toString(), findByScan(title.toString()), matcher.match(title.toString()));
+        }
+    }
+
+    // the same rule, checking every show at every position
+    private static Show findByScan(String title) {
+        Show best = null;
+        int bestLength = 0;
+        int bestStart = 0;
+        for (boolean shortCodes : new boolean[] { false, true }) {
+            for (Show show : SHOWS) {
+                String text = shortCodes ? show.getShortCode() : show.getTitle();
+                int start = title.indexOf(text);
+                while (start >= 0) {
+                    int end = start + text.length();
+                    boolean wholeWord = (start == 0 || !Character.isLetterOrDigit(title.charAt(start - 1)))
+                            && (end == title.length() || !Character.isLetterOrDigit(title.charAt(end)));
+                    if (!shortCodes || wholeWord) {
+                        if (text.length() > bestLength
+                                || (text.length() == bestLength && start < bestStart)) {
+                            best = show;
+                            bestLength = text.length();
+                            bestStart = start;
+                        }
+                        break;
+                    }
+                    start = title.indexOf(text, start + 1);
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,264 @@
+package com.tragicfruit.twitcast.database;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+    private final ExecutorService mFlightExecutor = Executors.newCachedThreadPool();
+    private static final String[] FEEDS = {
+            "http://feeds.twit.tv/brickhouse.xml",
+            "http://feeds.twit.tv/brickhouse_video_small.xml",
+            "http://feeds.twit.tv/brickhouse_video_large.xml",
+            "http://feeds.twit.tv/brickhouse_video_hd.xml"
+    };
+
+    /**
+     * Counts requests per URL and holds every response until released.
+     */
+    private static class CountingTransport implements HttpTransport {
+        private final Map<String, AtomicInteger> mRequests = new ConcurrentHashMap<>();
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+        private final TransportStats mStats = new TransportStats();
+
+        @Override
+        public HttpResponse get(final String urlSpec, Map<String, String> headers) throws IOException {
+            mRequests.putIfAbsent(urlSpec, new AtomicInteger());
+            mRequests.get(urlSpec).incrementAndGet();
+
+            try {
+                mRelease.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            return new HttpResponse() {
+                @Override
+                public int getCode() {
+                    return 200;
+                }
+
+                @Override
+                public String getMessage() {
+                    return "OK";
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    return null;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(urlSpec.getBytes());
+                }
+
+                @Override
+                public long getContentLength() {
+                    return urlSpec.length();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public TransportStats getStats() {
+            return mStats;
+        }
+
+        int getRequestCount(String urlSpec) {
+            AtomicInteger count = mRequests.get(urlSpec);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mFlightExecutor.shutdownNow();
+    }
+
+    private static String fetch(HttpTransport transport, String urlSpec) throws IOException {
+        HttpResponse response = transport.get(urlSpec, Collections.<String, String>emptyMap());
+        try {
+            return new String(response.readBytes());
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentRefreshesShareOneRequestPerFeed() throws Exception {
+        final CountingTransport transport = new CountingTransport();
+        final SingleFlight<String> flights = new SingleFlight<>(mFlightExecutor);
+
+        // three refreshes at once, each fetching all four feeds on its own threads
+        int refreshes = 3;
+        ExecutorService executor = Executors.newFixedThreadPool(refreshes * FEEDS.length);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < refreshes; i++) {
+            for (final String feed : FEEDS) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return flights.execute(feed, new Callable<String>() {
+                            @Override
+                            public String call() throws Exception {
+                                return fetch(transport, feed);
+                            }
+                        });
+                    }
+                }));
+            }
+        }
+
+        // let every caller join before the responses come back
+        while (flights.getInFlightCount() < FEEDS.length) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        transport.mRelease.countDown();
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(FEEDS[i % FEEDS.length], results.get(i).get());
+        }
+        for (String feed : FEEDS) {
+            assertEquals(1, transport.getRequestCount(feed));
+        }
+        assertEquals(0, flights.getInFlightCount());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void completedCallsAreNotCached() throws Exception {
+        CountingTransport transport = new CountingTransport();
+        transport.mRelease.countDown();
+        SingleFlight<String> flights = new SingleFlight<>(mFlightExecutor);
+
+        final HttpTransport t = transport;
+        for (int i = 0; i < 3; i++) {
+            flights.execute(FEEDS[0], new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return fetch(t, FEEDS[0]);
+                }
+            });
+        }
+
+        assertEquals(3, transport.getRequestCount(FEEDS[0]));
+    }
+
+    @Test(timeout = 10000)
+    public void failureIsSharedWithWaitingCallers() throws Exception {
+        final SingleFlight<String> flights = new SingleFlight<>(mFlightExecutor);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final Callable<String> failing = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                throw new IOException("Feed unavailable");
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> leader = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return flights.execute(FEEDS[0], failing);
+            }
+        });
+        started.await();
+        Future<String> follower = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return flights.execute(FEEDS[0], failing);
+            }
+        });
+        Thread.sleep(100);
+        release.countDown();
+
+        List<Future<String>> futures = new ArrayList<>();
+        futures.add(leader);
+        futures.add(follower);
+        for (Future<String> future : futures) {
+            try {
+                future.get();
+                fail("Expected failure");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(1, calls.get());
+
+        executor.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void interruptedCallerDoesntFailOthers() throws Exception {
+        final SingleFlight<String> flights = new SingleFlight<>(mFlightExecutor);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<String> slow = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                return FEEDS[0];
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> first = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return flights.execute(FEEDS[0], slow);
+            }
+        });
+        started.await();
+        Future<String> second = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return flights.execute(FEEDS[0], slow);
+            }
+        });
+        while (flights.getInFlightCount() < 1) {
+            Thread.sleep(10);
+        }
+
+        // as a refresh cancels its feeds when it is itself cancelled
+        first.cancel(true);
+        release.countDown();
+
+        assertEquals(FEEDS[0], second.get());
+        assertTrue(first.isCancelled());
+
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,148 @@
+package com.tragicfruit.twitcast.database;
+
+import com.tragicfruit.twitcast.episode.Episode;
+import com.tragicfruit.twitcast.episode.StreamQuality;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VideoFeedMergerTest {
+
+    private static Episode audioEpisode(String title) {
+        Episode episode = new Episode();
+        episode.setTitle(title);
+        episode.setAudioUrl("audio/" + title);
+        return episode;
+    }
+
+    private static Episode videoEpisode(String title) {
+        Episode episode = new Episode();
+        episode.setTitle(title);
+        episode.setVideoHdUrl("hd/" + title);
+        return episode;
+    }
+
+    private static List<Episode> audioFeed(int from, int to) {
+        List<Episode> feed = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            feed.add(audioEpisode("Show " + i));
+        }
+        return feed;
+    }
+
+    private static List<Episode> videoFeed(int from, int to) {
+        List<Episode> feed = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            feed.add(videoEpisode("Show " + i));
+        }
+        return feed;
+    }
+
+    @Test
+    public void alignedFeedsMatchEveryItem() {
+        List<Episode> audio = audioFeed(0, 50);
+        int unmatched = new VideoFeedMerger(audio).merge(videoFeed(0, 50), StreamQuality.VIDEO_HD);
+
+        assertEquals(0, unmatched);
+        for (Episode episode : audio) {
+            assertEquals("hd/" + episode.getTitle(), episode.getVideoHdUrl());
+        }
+    }
+
+    @Test
+    public void videoFeedAheadOfAudioFeed() {
+        // video feed has two newer items the audio feed doesn't have yet
+        List<Episode> audio = audioFeed(2, 50);
+        int unmatched = new VideoFeedMerger(audio).merge(videoFeed(0, 50), StreamQuality.VIDEO_HD);
+
+        assertEquals(2, unmatched);
+        for (Episode episode : audio) {
+            assertNotNull(episode.getVideoHdUrl());
+        }
+    }
+
+    @Test
+    public void videoFeedMissingItemsInTheMiddle() {
+        List<Episode> audio = audioFeed(0, 20);
+        List<Episode> video = videoFeed(0, 20);
+        video.remove(10);
+        video.remove(5);
+
+        int unmatched = new VideoFeedMerger(audio).merge(video, StreamQuality.VIDEO_HD);
+
+        assertEquals(0, unmatched);
+        for (int i = 0; i < audio.size(); i++) {
+            if (i == 5 || i == 10) {
+                assertNull(audio.get(i).getVideoHdUrl());
+            } else {
+                assertEquals("hd/Show " + i, audio.get(i).getVideoHdUrl());
+            }
+        }
+    }
+
+    @Test
+    public void reorderedVideoFeed() {
+        List<Episode> audio = audioFeed(0, 30);
+        List<Episode> video = videoFeed(0, 30);
+        Collections.reverse(video);
+
+        int unmatched = new VideoFeedMerger(audio).merge(video, StreamQuality.VIDEO_HD);
+
+        assertEquals(0, unmatched);
+        for (Episode episode : audio) {
+            assertEquals("hd/" + episode.getTitle(), episode.getVideoHdUrl());
+        }
+    }
+
+    @Test
+    public void titlesDifferingInCaseAndWhitespaceStillMatch() {
+        List<Episode> audio = new ArrayList<>();
+        audio.add(audioEpisode("This Week in Tech 600"));
+
+        List<Episode> video = new ArrayList<>();
+        video.add(videoEpisode("  this week  in\ttech 600 "));
+
+        int unmatched = new VideoFeedMerger(audio).merge(video, StreamQuality.VIDEO_HD);
+
+        assertEquals(0, unmatched);
+        assertNotNull(audio.get(0).getVideoHdUrl());
+    }
+
+    @Test
+    public void eachQualityOnlySetsItsOwnUrl() {
+        List<Episode> audio = audioFeed(0, 1);
+
+        Episode small = new Episode();
+        small.setTitle("Show 0");
+        small.setVideoSmallUrl("small");
+        List<Episode> smallFeed = new ArrayList<>();
+        smallFeed.add(small);
+
+        new VideoFeedMerger(audio).merge(smallFeed, StreamQuality.VIDEO_SMALL);
+
+        assertEquals("small", audio.get(0).getVideoSmallUrl());
+        assertNull(audio.get(0).getVideoLargeUrl());
+        assertNull(audio.get(0).getVideoHdUrl());
+        assertEquals("audio/Show 0", audio.get(0).getAudioUrl());
+    }
+
+    @Test(timeout = 5000)
+    public void reversedLargeFeedMergesInLinearTime() {
+        // a position-based walk is quadratic on a reversed feed and would not finish in time
+        int size = 200000;
+        List<Episode> audio = audioFeed(0, size);
+        List<Episode> video = videoFeed(size / 10, size + size / 10);
+        Collections.reverse(video);
+
+        int unmatched = new VideoFeedMerger(audio).merge(video, StreamQuality.VIDEO_HD);
+
+        assertEquals(size / 10, unmatched);
+        assertNull(audio.get(0).getVideoHdUrl());
+        assertNotNull(audio.get(size - 1).getVideoHdUrl());
+    }
+}
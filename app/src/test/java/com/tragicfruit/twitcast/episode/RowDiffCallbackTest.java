@@ -0,0 +1,112 @@
+package com.tragicfruit.twitcast.episode;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
+import com.tragicfruit.twitcast.database.EpisodePager;
+import com.tragicfruit.twitcast.database.EpisodePagers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RowDiffCallbackTest {
+    private static final int TODAY = 100;
+    private static final int YESTERDAY = 99;
+
+    // records each update as a string, e.g. "insert 1 1"
+    private static class RecordingCallback implements ListUpdateCallback {
+        final List<String> mUpdates = new ArrayList<>();
+
+        @Override
+        public void onInserted(int position, int count) {
+            mUpdates.add("insert " + position + " " + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mUpdates.add("remove " + position + " " + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mUpdates.add("move " + fromPosition + " " + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mUpdates.add("change " + position + " " + count);
+        }
+    }
+
+    /**
+     * Returns the rows of a list of the numbered episodes, newest first, with the first
+     * todayCount under a today header and the rest under a yesterday one.
+     */
+    private static RowDiffCallback.Rows createRows(int[] numbers, int[] contentHashes,
+                                                   int todayCount) {
+        int[] days = new int[numbers.length];
+        int[] keys = new int[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            days[i] = i < todayCount ? TODAY : YESTERDAY;
+            keys[i] = ("Episode " + numbers[i]).hashCode();
+        }
+        EpisodePager pager = EpisodePagers.create(days, keys, contentHashes);
+
+        SectionedRecyclerViewAdapter.Section[] sections = {
+                new SectionedRecyclerViewAdapter.Section(0, "Today"),
+                new SectionedRecyclerViewAdapter.Section(todayCount, "Yesterday")
+        };
+        return LatestFragment.getRows(pager, sections);
+    }
+
+    private static List<String> diff(RowDiffCallback.Rows oldRows, RowDiffCallback.Rows newRows) {
+        RecordingCallback callback = new RecordingCallback();
+        DiffUtil.calculateDiff(new RowDiffCallback(oldRows, newRows), false)
+                .dispatchUpdatesTo(callback);
+        return callback.mUpdates;
+    }
+
+    @Test
+    public void rowsIncludeSectionHeaders() {
+        RowDiffCallback.Rows rows = createRows(new int[] { 5, 4, 3, 2, 1 }, new int[5], 2);
+
+        assertEquals(7, rows.size());
+        assertEquals("Episode 5".hashCode(), rows.mIds[1]);
+        assertEquals("Episode 4".hashCode(), rows.mIds[2]);
+        assertEquals("Episode 3".hashCode(), rows.mIds[4]);
+        assertNotEquals(rows.mIds[0], rows.mIds[3]);
+    }
+
+    @Test
+    public void addedEpisodeIsOneInsert() {
+        RowDiffCallback.Rows oldRows = createRows(new int[] { 5, 4, 3, 2, 1 }, new int[5], 2);
+        RowDiffCallback.Rows newRows = createRows(new int[] { 6, 5, 4, 3, 2, 1 }, new int[6], 3);
+
+        // below the today header
+        List<String> updates = diff(oldRows, newRows);
+        assertEquals(1, updates.size());
+        assertEquals("insert 1 1", updates.get(0));
+    }
+
+    @Test
+    public void changedEpisodeIsOneChange() {
+        RowDiffCallback.Rows oldRows = createRows(new int[] { 5, 4, 3, 2, 1 }, new int[5], 2);
+        RowDiffCallback.Rows newRows = createRows(new int[] { 5, 4, 3, 2, 1 },
+                new int[] { 0, 0, 1, 0, 0 }, 2);
+
+        List<String> updates = diff(oldRows, newRows);
+        assertEquals(1, updates.size());
+        assertEquals("change 4 1", updates.get(0));
+    }
+
+    @Test
+    public void sameRowsHaveNoUpdates() {
+        RowDiffCallback.Rows rows = createRows(new int[] { 5, 4, 3, 2, 1 }, new int[5], 2);
+
+        assertTrue(diff(rows, createRows(new int[] { 5, 4, 3, 2, 1 }, new int[5], 2)).isEmpty());
+    }
+}
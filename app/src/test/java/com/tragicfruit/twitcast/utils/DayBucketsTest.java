@@ -0,0 +1,71 @@
+package com.tragicfruit.twitcast.utils;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class DayBucketsTest {
+    private static final int ITERATIONS = 20000;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    // 1960-01-01 to 2040-01-01, so days before the epoch are covered too
+    private static final long MIN_MILLIS = -315619200000L;
+    private static final long MAX_MILLIS = 2208988800000L;
+
+    private static final String[] ZONE_IDS = {
+            "UTC", "America/Los_Angeles", "America/New_York", "Pacific/Auckland", "Asia/Kolkata",
+            "Australia/Adelaide", "Asia/Kathmandu", "Europe/London"
+    };
+
+    @Test
+    public void sameDayAsCalendar() {
+        Random random = new Random(0);
+        for (String zoneId : ZONE_IDS) {
+            TimeZone zone = TimeZone.getTimeZone(zoneId);
+            Calendar cal1 = Calendar.getInstance(zone);
+            Calendar cal2 = Calendar.getInstance(zone);
+
+            for (int i = 0; i < ITERATIONS; i++) {
+                long millis1 = MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS));
+                long millis2 = millis1 + (long) (random.nextGaussian() * 24 * HOUR);
+                cal1.setTimeInMillis(millis1);
+                cal2.setTimeInMillis(millis2);
+                boolean sameDay = cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR)
+                        && cal1.get(Calendar.DAY_OF_YEAR) == cal2.get(Calendar.DAY_OF_YEAR);
+
+                assertEquals(zoneId + " " + millis1 + " " + millis2, sameDay,
+                        DayBuckets.getDay(millis1, zone) == DayBuckets.getDay(millis2, zone));
+            }
+        }
+    }
+
+    @Test
+    public void daysAreConsecutive() {
+        TimeZone zone = TimeZone.getTimeZone("Pacific/Auckland");
+        // midnight starting 2016-04-03, a 25 hour day as daylight saving ends there
+        long midnight = 1459594800000L;
+
+        assertEquals(DayBuckets.getDay(midnight - 1, zone) + 1, DayBuckets.getDay(midnight, zone));
+        assertEquals(DayBuckets.getDay(midnight, zone), DayBuckets.getDay(midnight + 24 * HOUR, zone));
+        assertEquals(DayBuckets.getDay(midnight, zone) + 1,
+                DayBuckets.getDay(midnight + 25 * HOUR, zone));
+    }
+
+    @Test
+    public void labelsRecentDaysRelativeToToday() {
+        TimeZone zone = TimeZone.getTimeZone("America/Los_Angeles");
+        long now = 1497480186000L; // 2017-06-14 15:43 PDT
+        DayBuckets buckets = new DayBuckets(zone, now);
+        int today = DayBuckets.getDay(now, zone);
+
+        assertEquals("Today", buckets.getLabel(today + 1));
+        assertEquals("Today", buckets.getLabel(today));
+        assertEquals("Yesterday", buckets.getLabel(today - 1));
+        assertEquals("6 days ago", buckets.getLabel(today - 6));
+        assertSame(buckets.getLabel(today - 3), buckets.getLabel(today - 3));
+    }
+}
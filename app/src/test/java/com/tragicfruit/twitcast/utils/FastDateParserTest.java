@@ -0,0 +1,142 @@
+package com.tragicfruit.twitcast.utils;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class FastDateParserTest {
+    private static final String RSS_DATE_FORMAT = "EEE, d MMM yyyy k:m:s ZZZ";
+    private static final int ITERATIONS = 20000;
+
+    // 2000-01-01 to 2040-01-01
+    private static final long MIN_MILLIS = 946684800000L;
+    private static final long MAX_MILLIS = 2208988800000L;
+
+    private static final String[] ZONE_IDS = {
+            "UTC", "America/Los_Angeles", "America/New_York", "America/Chicago", "America/Denver",
+            "Pacific/Auckland", "Asia/Kolkata", "Australia/Adelaide", "Asia/Kathmandu", "Europe/London"
+    };
+
+    private static final String[] ZONE_NAMES = {
+            "GMT", "UTC", "EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "PDT"
+    };
+
+    private static long randomSeconds(Random random) {
+        long millis = MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS));
+        return millis / 1000 * 1000;
+    }
+
+    private static SimpleDateFormat format(String pattern, TimeZone zone) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(zone);
+        return format;
+    }
+
+    @Test
+    public void rfc822WithNumericOffsetsMatchesSimpleDateFormat() throws ParseException {
+        Random random = new Random(822);
+        for (int i = 0; i < ITERATIONS; i++) {
+            TimeZone zone = TimeZone.getTimeZone(ZONE_IDS[random.nextInt(ZONE_IDS.length)]);
+            long millis = randomSeconds(random);
+            String text = format(RSS_DATE_FORMAT, zone).format(new Date(millis));
+
+            long expected = new SimpleDateFormat(RSS_DATE_FORMAT, Locale.US).parse(text).getTime();
+            assertEquals(text, millis, expected);
+            assertEquals(text, expected, FastDateParser.parseRfc822(text));
+        }
+    }
+
+    @Test
+    public void rfc822WithZoneNamesMatchesSimpleDateFormat() throws ParseException {
+        Random random = new Random(1982);
+        SimpleDateFormat utc = format("EEE, d MMM yyyy k:m:s", TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < ITERATIONS; i++) {
+            String text = utc.format(new Date(randomSeconds(random)))
+                    + " " + ZONE_NAMES[random.nextInt(ZONE_NAMES.length)];
+
+            long expected = new SimpleDateFormat(RSS_DATE_FORMAT, Locale.US).parse(text).getTime();
+            assertEquals(text, expected, FastDateParser.parseRfc822(text));
+        }
+    }
+
+    @Test
+    public void rfc822PaddedFieldsAndMidnight() throws ParseException {
+        SimpleDateFormat reference = new SimpleDateFormat(RSS_DATE_FORMAT, Locale.US);
+        String[] dates = {
+                "Wed, 14 Jun 2017 15:43:06 -0700",
+                "Wed, 14 Jun 2017 09:05:06 +0000",
+                "Sun, 1 Jan 2017 24:0:0 +1300",
+                "Thu, 29 Feb 2024 7:8:9 -0930",
+                "  Mon, 2 Jan 2017 1:2:3 GMT  "
+        };
+
+        for (String text : dates) {
+            assertEquals(text, reference.parse(text.trim()).getTime(), FastDateParser.parseRfc822(text));
+        }
+    }
+
+    @Test
+    public void iso8601MatchesSimpleDateFormat() throws ParseException {
+        Random random = new Random(8601);
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.US);
+        for (int i = 0; i < ITERATIONS; i++) {
+            TimeZone zone = TimeZone.getTimeZone(ZONE_IDS[random.nextInt(ZONE_IDS.length)]);
+            long millis = randomSeconds(random) + random.nextInt(1000);
+
+            String withFraction = format("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", zone).format(new Date(millis));
+            assertEquals(withFraction, reference.parse(withFraction).getTime(),
+                    FastDateParser.parseIso8601(withFraction));
+
+            String withoutFraction = format("yyyy-MM-dd'T'HH:mm:ssXXX", zone).format(new Date(millis));
+            assertEquals(withoutFraction, millis / 1000 * 1000, FastDateParser.parseIso8601(withoutFraction));
+        }
+    }
+
+    @Test
+    public void formatIso8601RoundTrips() throws ParseException {
+        Random random = new Random(3339);
+        SimpleDateFormat reference = format("yyyy-MM-dd'T'HH:mm:ss'Z'", TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < ITERATIONS; i++) {
+            long millis = randomSeconds(random);
+            String text = FastDateParser.formatIso8601(millis);
+
+            assertEquals(reference.format(new Date(millis)), text);
+            assertEquals(millis, FastDateParser.parseIso8601(text));
+        }
+    }
+
+    @Test
+    public void malformedDatesAreRejected() {
+        String[] rfc822 = {
+                "", "Wed, 14 Jun 2017", "Wed, 14 Foo 2017 15:43:06 -0700",
+                "Wed, 14 Jun 2017 15:43:06", "Wed, 14 Jun 2017 15:43:06 AEST", "Wed, 14 Jun 2017 15:43:06 -0700 x",
+                "Wed, 14 Jun 2017 15:43:\u0660\u0666 -0700"
+        };
+        for (String text : rfc822) {
+            try {
+                FastDateParser.parseRfc822(text);
+                fail("Parsed " + text);
+            } catch (ParseException expected) {
+                // expected
+            }
+        }
+
+        String[] iso8601 = {"", "2017-06-14", "2017-06-14T15:00:00", "2017-13-14T15:00:00Z", "2017-06-14T15:00:00+7",
+                "2017-06-14T15:00:00.\u0661\u0662Z"};
+        for (String text : iso8601) {
+            try {
+                FastDateParser.parseIso8601(text);
+                fail("Parsed " + text);
+            } catch (ParseException expected) {
+                // expected
+            }
+        }
+    }
+}